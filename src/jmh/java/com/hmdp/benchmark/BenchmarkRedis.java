@@ -0,0 +1,45 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.config.RedisConfig;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 基准测试使用的redis连接，地址通过 -Dredis.host -Dredis.port -Dredis.password 指定，默认本机6379
+ * 脚本会写入stream.orders等业务key，请使用单独的redis实例
+ * 和应用中一样提供两个template：RedisConfig中json序列化的redisTemplate，以及spring boot自动配置的stringRedisTemplate
+ */
+final class BenchmarkRedis {
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final StringRedisTemplate stringTemplate;
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    BenchmarkRedis() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "127.0.0.1"), Integer.getInteger("redis.port", 6379));
+        String password = System.getProperty("redis.password");
+        if (password != null && !password.isEmpty()) {
+            configuration.setPassword(password);
+        }
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        stringTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate = new RedisConfig().redisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+    }
+
+    StringRedisTemplate stringTemplate() {
+        return stringTemplate;
+    }
+
+    RedisTemplate<String, Object> redisTemplate() {
+        return redisTemplate;
+    }
+
+    void close() {
+        connectionFactory.destroy();
+    }
+}
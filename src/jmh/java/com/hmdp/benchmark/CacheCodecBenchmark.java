@@ -0,0 +1,75 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存编码对比：JSON（与RedisConfig中RedisTemplate的写入格式一致）和二进制编码
+ * 启动时打印两种编码后的字节数，并校验二进制编码能还原出相同的对象
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    @Param({"json", "binary"})
+    private String codecName;
+
+    private CacheCodec codec;
+    private Shop shop;
+    private Blog blog;
+    private byte[] shopBytes;
+    private byte[] blogBytes;
+
+    @Setup
+    public void setup() {
+        codec = "json".equals(codecName) ? new JsonCacheCodec(new GenericJackson2JsonRedisSerializer()) : new BinaryCacheCodec();
+        shop = new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39)).setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        blog = new Blog().setId(4L).setShopId(4L).setUserId(2L).setTitle("无尽浪漫的夜晚丨在万花丛中摇晃着红酒杯🍷品战斧牛排🥩")
+                .setImages("/imgs/blogs/7/14/4771fefb-1a87-4252-816c-9f7ec41ffa4a.jpg,/imgs/blogs/4/10/2f07e3c9-ddce-482d-9ea7-c21450f8d7cd.jpg")
+                .setContent("生活就是一半烟火·一半诗意<br/>手执烟火谋生活·心怀诗意以谋爱·<br/>当然<br/>\\r\\n男朋友给不了的浪漫要学会自己给🍒<br/>")
+                .setLiked(1).setComments(104)
+                .setCreateTime(LocalDateTime.of(2021, 12, 28, 19, 50, 1)).setUpdateTime(LocalDateTime.of(2022, 3, 10, 14, 26, 34));
+        shopBytes = codec.encode(shop);
+        blogBytes = codec.encode(blog);
+        if (!shop.equals(codec.decode(shopBytes, Shop.class)) || !blog.equals(codec.decode(blogBytes, Blog.class))) {
+            throw new IllegalStateException(codecName + " 编解码结果不一致");
+        }
+        System.out.printf("%n[%s] Shop %d bytes, Blog %d bytes%n", codecName, shopBytes.length, blogBytes.length);
+    }
+
+    @Benchmark
+    public byte[] encodeShop() {
+        return codec.encode(shop);
+    }
+
+    @Benchmark
+    public Shop decodeShop() {
+        return codec.decode(shopBytes, Shop.class);
+    }
+
+    @Benchmark
+    public byte[] encodeBlog() {
+        return codec.encode(blog);
+    }
+
+    @Benchmark
+    public Blog decodeBlog() {
+        return codec.decode(blogBytes, Blog.class);
+    }
+}
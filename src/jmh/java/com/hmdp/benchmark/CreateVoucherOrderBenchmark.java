@@ -0,0 +1,60 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.HmDianPingApplication;
+import com.hmdp.dto.VoucherOrderStatus;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单落库 createVoucherOrder，启动完整的spring容器，数据库使用H2内存库（application-jmh.yaml）
+ * 每次调用使用新的用户，走完查重、扣库存、插入订单的完整事务
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateVoucherOrderBenchmark {
+
+    private static final long VOUCHER_ID = 900000001L;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private IVoucherOrderService voucherOrderService;
+
+    @Setup
+    public void setup() {
+        SpringApplication application = new SpringApplication(HmDianPingApplication.class);
+        application.setAdditionalProfiles("jmh");
+        context = application.run();
+        voucherOrderService = context.getBean(IVoucherOrderService.class);
+        SeckillVoucher voucher = new SeckillVoucher();
+        voucher.setVoucherId(VOUCHER_ID);
+        voucher.setStock(Integer.MAX_VALUE);
+        context.getBean(ISeckillVoucherService.class).save(voucher);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public VoucherOrderStatus createVoucherOrder() {
+        long id = sequence.incrementAndGet();
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(id);
+        voucherOrder.setUserId(id);
+        voucherOrder.setVoucherId(VOUCHER_ID);
+        return voucherOrderService.createVoucherOrder(voucherOrder, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,50 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.RedisIDWorker;
+import com.hmdp.utils.SnowflakeIDWorker;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单id生成：号段模式的RedisIDWorker和本地的SnowflakeIDWorker
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IDWorkerBenchmark {
+
+    private static final String KEY_PREFIX = "jmh";
+
+    private BenchmarkRedis redis;
+    private RedisIDWorker redisIDWorker;
+    private SnowflakeIDWorker snowflakeIDWorker;
+
+    @Setup
+    public void setup() {
+        redis = new BenchmarkRedis();
+        redisIDWorker = new RedisIDWorker();
+        // 和应用中注入的是同一个json序列化的redisTemplate
+        ReflectionTestUtils.setField(redisIDWorker, "redisTemplate", redis.redisTemplate());
+        snowflakeIDWorker = new SnowflakeIDWorker(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        redis.close();
+    }
+
+    @Benchmark
+    public long redisIDWorker() {
+        return redisIDWorker.nextId(KEY_PREFIX);
+    }
+
+    @Benchmark
+    public long snowflakeIDWorker() {
+        return snowflakeIDWorker.nextId(KEY_PREFIX);
+    }
+}
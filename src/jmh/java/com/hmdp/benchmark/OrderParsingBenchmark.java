@@ -0,0 +1,37 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.entity.VoucherOrder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * parsingOrder中把stream消息转换为订单对象的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderParsingBenchmark {
+
+    private Map<Object, Object> values;
+
+    @Setup
+    public void setup() {
+        // 与seckill.lua写入stream.orders的字段一致
+        values = new HashMap<>();
+        values.put("voucherId", "10");
+        values.put("userId", "1010");
+        values.put("id", "297307221524185089");
+    }
+
+    @Benchmark
+    public VoucherOrder fillBeanWithMap() {
+        return BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
+    }
+}
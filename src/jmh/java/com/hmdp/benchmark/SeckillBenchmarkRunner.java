@@ -0,0 +1,59 @@
+package com.hmdp.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 按多个线程数依次运行基准测试，最后汇总吞吐量和尾延迟
+ * mvn -P jmh test-compile exec:exec -Djmh.threads=1,4,16 -Djmh.args=SeckillScript
+ * jmh.args 支持JMH的全部命令行参数，例如只运行某个测试类、修改迭代次数
+ */
+public class SeckillBenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        List<RunResult> results = new ArrayList<>();
+        List<Integer> threadCounts = new ArrayList<>();
+        for (String threads : System.getProperty("jmh.threads", "1,4,16").split(",")) {
+            int threadCount = Integer.parseInt(threads.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).threads(threadCount);
+            if (commandLine.getIncludes().isEmpty()) {
+                options.include(SeckillBenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+            }
+            Collection<RunResult> runResults = new Runner(options.build()).run();
+            results.addAll(runResults);
+            for (int i = 0; i < runResults.size(); i++) {
+                threadCounts.add(threadCount);
+            }
+        }
+        System.out.printf("%n%-72s %8s %16s %12s %12s %12s%n", "Benchmark", "Threads", "Score/Unit", "p50", "p99", "p99.9");
+        for (int i = 0; i < results.size(); i++) {
+            RunResult result = results.get(i);
+            StringBuilder label = new StringBuilder(result.getParams().getBenchmark());
+            for (String key : result.getParams().getParamsKeys()) {
+                label.append(' ').append(key).append('=').append(result.getParams().getParam(key));
+            }
+            label.append(" (").append(result.getParams().getMode().shortLabel()).append(')');
+            if (result.getParams().getMode() == Mode.SampleTime) {
+                Statistics statistics = result.getPrimaryResult().getStatistics();
+                System.out.printf("%-72s %8d %16s %12.3f %12.3f %12.3f%n", label, threadCounts.get(i),
+                        result.getPrimaryResult().getScoreUnit(), statistics.getPercentile(50),
+                        statistics.getPercentile(99), statistics.getPercentile(99.9));
+            } else {
+                System.out.printf("%-72s %8d %16s%n", label, threadCounts.get(i),
+                        String.format("%.3f %s", result.getPrimaryResult().getScore(), result.getPrimaryResult().getScoreUnit()));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.service.impl.VoucherOrderServiceImpl;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SnowflakeIDWorker;
+import com.hmdp.utils.UserHolder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 秒杀接口在redis中的耗时，通过VoucherOrderServiceImpl.seckillVoucher执行seckill.lua，和应用中使用同样的template和参数
+ * 每次调用使用新的用户id，都会走完校验时间、扣库存、记录用户、写入消息队列的完整路径
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SeckillScriptBenchmark {
+
+    private static final Long VOUCHER_ID = 900000001L;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private BenchmarkRedis redis;
+    private VoucherOrderServiceImpl voucherOrderService;
+
+    @Setup
+    public void setup() {
+        redis = new BenchmarkRedis();
+        SeckillSoldOutRegistry soldOutRegistry = new SeckillSoldOutRegistry();
+        ReflectionTestUtils.setField(soldOutRegistry, "redisTemplate", redis.redisTemplate());
+        voucherOrderService = new VoucherOrderServiceImpl();
+        ReflectionTestUtils.setField(voucherOrderService, "stringRedisTemplate", redis.stringTemplate());
+        ReflectionTestUtils.setField(voucherOrderService, "soldOutRegistry", soldOutRegistry);
+        ReflectionTestUtils.setField(voucherOrderService, "idWorker", new SnowflakeIDWorker(1));
+        clean();
+        redis.stringTemplate().opsForValue().set(RedisConstants.SECKILL_STOCK_KEY + VOUCHER_ID, String.valueOf(Integer.MAX_VALUE));
+    }
+
+    @TearDown
+    public void tearDown() {
+        clean();
+        redis.close();
+    }
+
+    private void clean() {
+        redis.stringTemplate().delete(Arrays.asList(RedisConstants.SECKILL_STOCK_KEY + VOUCHER_ID,
+                RedisConstants.SECKILL_ORDER_KEY + VOUCHER_ID, RedisConstants.STREAM_ORDERS));
+    }
+
+    @Benchmark
+    public Result seckill() {
+        UserDTO user = new UserDTO();
+        user.setId(sequence.incrementAndGet());
+        UserHolder.saveUser(user);
+        return voucherOrderService.seckillVoucher(VOUCHER_ID);
+    }
+}
@@ -0,0 +1,25 @@
+-- 基准测试只用到订单和秒杀库存两张表，字段与db/hmdp.sql一致
+CREATE TABLE IF NOT EXISTS tb_seckill_voucher (
+  voucher_id bigint NOT NULL,
+  stock int NOT NULL,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  begin_time timestamp NULL DEFAULT NULL,
+  end_time timestamp NULL DEFAULT NULL,
+  update_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (voucher_id)
+);
+
+CREATE TABLE IF NOT EXISTS tb_voucher_order (
+  id bigint NOT NULL,
+  user_id bigint NOT NULL,
+  voucher_id bigint NOT NULL,
+  pay_type tinyint NOT NULL DEFAULT 1,
+  status tinyint NOT NULL DEFAULT 1,
+  create_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  pay_time timestamp NULL DEFAULT NULL,
+  use_time timestamp NULL DEFAULT NULL,
+  refund_time timestamp NULL DEFAULT NULL,
+  update_time timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (id)
+);
+CREATE INDEX IF NOT EXISTS idx_voucher_order_user ON tb_voucher_order (user_id, voucher_id);
@@ -1,12 +1,16 @@
 package com.hmdp.config;
 
+import cn.hutool.core.util.StrUtil;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.redisson.config.SingleServerConfig;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 
@@ -32,10 +36,26 @@ public class RedisConfig {
         return template;
     }
 
+    /**
+     * redis发布订阅的监听容器
+     */
     @Bean
-    public RedissonClient redissonClient1() {
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    @Bean
+    public RedissonClient redissonClient1(@Value("${spring.redis.host}") String host,
+                                          @Value("${spring.redis.port}") int port,
+                                          @Value("${spring.redis.password:}") String password) {
         Config config = new Config();
-        config.useSingleServer().setAddress("redis://192.168.66.111:6379").setPassword("1679258");
+        // 与spring.redis使用同一个redis，基准测试等环境切换地址时不需要改代码
+        SingleServerConfig serverConfig = config.useSingleServer().setAddress("redis://" + host + ":" + port);
+        if (StrUtil.isNotBlank(password)) {
+            serverConfig.setPassword(password);
+        }
         return Redisson.create(config);
     }
 
@@ -0,0 +1,72 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheRefreshScheduler;
+import com.hmdp.utils.CacheStats;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.NearCache;
+import com.hmdp.utils.SeckillMetrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * 监控接口，和其他接口一样需要登录后访问
+ */
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    @Resource
+    private SeckillMetrics seckillMetrics;
+    @Resource
+    private CacheStats cacheStats;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private CacheRefreshScheduler cacheRefreshScheduler;
+    @Resource
+    private NearCache nearCache;
+
+    /**
+     * 秒杀下单链路的积压和延迟
+     */
+    @GetMapping("/seckill")
+    public Result seckill() {
+        return Result.ok(seckillMetrics.snapshot());
+    }
+
+    /**
+     * 按key前缀统计的缓存命中率和数据库加载耗时
+     */
+    @GetMapping("/cache")
+    public Result cache() {
+        return Result.ok(cacheStats.snapshot());
+    }
+
+    /**
+     * 当前晋升到本地缓存的热点key和估算的采样访问次数
+     */
+    @GetMapping("/cache/hot")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.hotKeys());
+    }
+
+    /**
+     * 缓存后台刷新的排队、合并、丢弃和失败次数
+     */
+    @GetMapping("/cache/refresh")
+    public Result cacheRefresh() {
+        return Result.ok(cacheRefreshScheduler.snapshot());
+    }
+
+    /**
+     * 近端缓存的命中次数和redis推送的失效次数
+     */
+    @GetMapping("/cache/near")
+    public Result nearCache() {
+        return Result.ok(nearCache.snapshot());
+    }
+}
@@ -3,6 +3,7 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -29,4 +30,14 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return service.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查询秒杀订单的处理结果
+     * @param orderId 秒杀返回的订单id
+     * @return 订单状态
+     */
+    @GetMapping("{id}/status")
+    public Result queryOrderStatus(@PathVariable("id") Long orderId) {
+        return service.queryOrderStatus(orderId);
+    }
 }
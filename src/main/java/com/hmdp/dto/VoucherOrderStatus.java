@@ -0,0 +1,31 @@
+package com.hmdp.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 秒杀订单异步处理结果
+ */
+@Getter
+@AllArgsConstructor
+@JsonFormat(shape = JsonFormat.Shape.OBJECT)
+public enum VoucherOrderStatus {
+    QUEUED(0, "排队中"),
+    PERSISTED(1, "下单成功"),
+    DUPLICATE(2, "限购一次"),
+    OUT_OF_STOCK(3, "库存不足"),
+    FAILED(4, "下单失败");
+
+    private final int code;
+    private final String desc;
+
+    public static VoucherOrderStatus of(int code) {
+        for (VoucherOrderStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("未知的订单状态: " + code);
+    }
+}
@@ -2,6 +2,7 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.SeckillVoucher;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
 
 /**
  * <p>
@@ -13,4 +14,18 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface SeckillVoucherMapper extends BaseMapper<SeckillVoucher> {
 
+    /**
+     * 一次扣减多个库存，库存不足count时不扣减
+     * @param voucherId 优惠券id
+     * @param count 扣减数量
+     * @return 更新行数
+     */
+    int deductStock(@Param("voucherId") Long voucherId, @Param("count") int count);
+
+    /**
+     * 加锁读取当前库存，读到的是最新提交的值而不是事务快照，事务结束前其他消费者无法扣减
+     * @param voucherId 优惠券id
+     * @return 库存，优惠券不存在时为null
+     */
+    Integer selectStockForUpdate(@Param("voucherId") Long voucherId);
 }
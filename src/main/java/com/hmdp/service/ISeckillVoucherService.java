@@ -13,4 +13,11 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface ISeckillVoucherService extends IService<SeckillVoucher> {
 
+    /**
+     * 扣减库存，库存不足count时按剩余库存扣减
+     * @param voucherId 优惠券id
+     * @param count 期望扣减数量
+     * @return 实际扣减数量
+     */
+    int deductStock(Long voucherId, int count);
 }
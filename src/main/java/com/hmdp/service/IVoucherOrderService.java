@@ -1,9 +1,13 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.VoucherOrderStatus;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +20,19 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
-    void createVoucherOrder(VoucherOrder voucherId, Integer stock);
+    VoucherOrderStatus createVoucherOrder(VoucherOrder voucherId, Integer stock);
+
+    /**
+     * 批量保存订单
+     * @param voucherOrders 从stream.orders中取出的一批订单
+     * @return 每个订单的处理结果
+     */
+    Map<Long, VoucherOrderStatus> createVoucherOrders(List<VoucherOrder> voucherOrders);
+
+    /**
+     * 查询秒杀订单的异步处理结果，只查redis
+     * @param orderId 订单id
+     * @return 订单状态
+     */
+    Result queryOrderStatus(Long orderId);
 }
@@ -16,6 +16,9 @@ import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BloomFilterRegistry;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
@@ -23,9 +26,12 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -46,6 +52,18 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
     @Resource
     private IFollowService followService;
+    @Resource
+    private BloomFilterRegistry bloomFilters;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
+    @PostConstruct
+    private void init() {
+        bloomFilters.register(SystemConstants.BLOOM_BLOG, baseMapper);
+        cacheClient.bindBloomFilter(RedisConstants.CACHE_BLOG_KEY, SystemConstants.BLOOM_BLOG);
+    }
 
     @Override
     public Result queryHotBlog(Integer current) {
@@ -55,16 +73,17 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         Page<Blog> page = baseMapper.selectPage(new Page<>(current, SystemConstants.MAX_PAGE_SIZE), wrapper);
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        // 批量查询用户
+        queryBlogUsers(records);
+        records.forEach(this::isBlogLiked);
         return Result.ok(records);
     }
 
     @Override
     public Result queryBlogById(Long id) {
+        if (!bloomFilters.mightContain(SystemConstants.BLOOM_BLOG, id)) {
+            return Result.fail("笔记不存在");
+        }
         // 查询blog
         Blog blog = baseMapper.selectById(id);
         if (blog == null) {
@@ -123,6 +142,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             // 修改点赞数量
             int update = baseMapper.update(blog, wrapper);
             if (update >= 1) {
+                // 点赞数变化，删除缓存
+                cacheInvalidator.evictAfterCommit(RedisConstants.CACHE_BLOG_KEY + id);
                 // 保存用户到redis的set集合
                 redisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
                 return Result.ok("点赞成功");
@@ -135,6 +156,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             // 修改点赞数量
             int update = baseMapper.update(blog, wrapper);
             if (update >= 1) {
+                // 点赞数变化，删除缓存
+                cacheInvalidator.evictAfterCommit(RedisConstants.CACHE_BLOG_KEY + id);
                 // 将用户从redis的set集合移除
                 redisTemplate.opsForZSet().remove(key, userId.toString());
                 return Result.ok("取消点赞");
@@ -162,6 +185,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (isSuccess < 0) {
             return Result.fail("新增笔记失败");
         }
+        bloomFilters.put(SystemConstants.BLOOM_BLOG, blog.getId());
         // 查询笔记作者的所有粉丝
         List<Follow> allFans = followService.queryAllFans(user);
         // 推送笔记id给所有粉丝
@@ -202,14 +226,13 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 os = 1;
             }
         }
-        // 根据id查询blog
-        String idStr = StrUtil.join(",", ids);
-        List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id" + idStr + ")").list();
+        // 根据id批量查询blog，按推送时间排序
+        List<Blog> blogs = cacheClient.queryMany(RedisConstants.CACHE_BLOG_KEY, ids, Blog.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Blog::getId, Function.identity())),
+                RedisConstants.CACHE_BLOG_TTL, TimeUnit.MINUTES);
 
-        blogs.stream().forEach(blog -> {
-            queryBlogUser(blog);
-            isBlogLiked(blog);
-        });
+        queryBlogUsers(blogs);
+        blogs.forEach(this::isBlogLiked);
 
         ScrollResult scrollResult = new ScrollResult();
         scrollResult.setList(blogs);
@@ -218,6 +241,25 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(scrollResult);
     }
 
+    /**
+     * 批量查询笔记作者，只缓存UserDTO中的公开字段
+     */
+    private void queryBlogUsers(List<Blog> blogs) {
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).distinct().collect(Collectors.toList());
+        Map<Long, UserDTO> users = cacheClient.queryMany(RedisConstants.CACHE_USER_KEY, userIds, UserDTO.class,
+                        missIds -> userService.listByIds(missIds).stream()
+                                .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))),
+                        RedisConstants.CACHE_USER_TTL, TimeUnit.MINUTES)
+                .stream().collect(Collectors.toMap(UserDTO::getId, Function.identity()));
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+    }
+
     private void queryBlogUser(Blog blog) {
         Long userId = blog.getUserId();
         User user = userService.getById(userId);
@@ -17,4 +17,20 @@ import org.springframework.stereotype.Service;
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
 
+    @Override
+    public int deductStock(Long voucherId, int count) {
+        // 库存充足，一条update扣减整批
+        if (baseMapper.deductStock(voucherId, count) > 0) {
+            return count;
+        }
+        // 库存不足整批，按剩余库存扣减
+        // 必须加锁读取：事务中之前的查询已经固定了快照，普通查询读不到其他消费者的扣减
+        // 加锁后其他消费者要等本事务结束才能扣减，读到的库存一定可以扣减成功
+        Integer stock = baseMapper.selectStockForUpdate(voucherId);
+        int remain = stock == null ? 0 : Math.min(stock, count);
+        if (remain <= 0) {
+            return 0;
+        }
+        return baseMapper.deductStock(voucherId, remain) > 0 ? remain : 0;
+    }
 }
@@ -11,9 +11,12 @@ import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.BloomFilterRegistry;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopGeoIndex;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
@@ -25,12 +28,15 @@ import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -43,14 +49,45 @@ import java.util.concurrent.TimeUnit;
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
+    /**
+     * 店铺列表展示的字段，不包含营业时间、坐标和创建更新时间
+     */
+    private static final String[] SHOP_LIST_FIELDS = {"id", "name", "typeId", "images", "area", "address",
+            "avgPrice", "sold", "comments", "score"};
+
     @Resource
     private RedisTemplate<String, String> redisTemplate;
     @Resource
     private CacheClient cacheClient;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private BloomFilterRegistry bloomFilters;
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @PostConstruct
+    private void init() {
+        bloomFilters.register(SystemConstants.BLOOM_SHOP, baseMapper);
+        cacheClient.bindBloomFilter(RedisConstants.CACHE_SHOP_KEY, SystemConstants.BLOOM_SHOP);
+        cacheClient.bindBloomFilter(RedisConstants.CACHE_SHOP_HASH_KEY, SystemConstants.BLOOM_SHOP);
+    }
+
+    @Override
+    public boolean save(Shop shop) {
+        boolean saved = super.save(shop);
+        if (saved) {
+            bloomFilters.put(SystemConstants.BLOOM_SHOP, shop.getId());
+            cacheInvalidator.afterCommit(() -> shopGeoIndex.refresh(shop.getId()));
+        }
+        return saved;
+    }
 
     @Override
     public Result queryShopById(Long id) {
-        Shop shop = cacheClient.queryWithPassThrough(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        Shop shop = SystemConstants.CACHE_EARLY_REFRESH
+                ? cacheClient.queryWithEarlyRefresh(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                : cacheClient.queryWithPassThrough(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
         if (shop == null) {
             return Result.fail("店铺不存在");
         }
@@ -191,8 +228,12 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     public Result updateShop(Shop shop) {
         // 更新数据库
         baseMapper.updateById(shop);
-        // 删除缓存
-        redisTemplate.delete(RedisConstants.LOCK_SHOP_KEY + shop.getId());
+        // 事务提交后删除缓存，包括所有节点的一级缓存
+        cacheInvalidator.evictAfterCommit(RedisConstants.CACHE_SHOP_KEY + shop.getId());
+        // 列表使用的hash缓存同样删除，下次读取时从数据库加载
+        cacheInvalidator.evictAfterCommit(RedisConstants.CACHE_SHOP_HASH_KEY + shop.getId());
+        // 提交后通知所有节点更新位置索引
+        cacheInvalidator.afterCommit(() -> shopGeoIndex.refresh(shop.getId()));
         return Result.ok();
     }
 
@@ -217,36 +258,42 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 计算分页参数
         int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
         int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
-        // 查询redis
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results = redisTemplate.opsForGeo().search(RedisConstants.SHOP_GEO_KEY + typeId,
-                GeoReference.fromCoordinate(x, y),
-                new Distance(5000), RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().limit(from));
-        // 解析出id
-        if (results == null) {
-            return Result.ok(Collections.emptyList());
-        }
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if (list.size() <= from) {
+        // 店铺id -> 距离，按距离排序
+        Map<Long, Double> distanceMap = SystemConstants.SHOP_GEO_INDEX_ENABLED && shopGeoIndex.isLoaded()
+                ? shopGeoIndex.search(typeId, x, y, SystemConstants.SHOP_GEO_RADIUS, end)
+                : searchGeo(typeId, x, y, end);
+        if (distanceMap.size() <= from) {
             // 没有下一页
             return Result.ok(Collections.emptyList());
         }
-        List<Long> ids = new ArrayList<>(list.size());
-        Map<String, Distance> distanceMap = new HashMap<>();
         // 截取from - end的部分
-        list.stream().skip(from).forEach(result -> {
-            // 店铺id
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            // 获取距离
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
-        // 根据id查询shop
-        String idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id" + idStr + ")").list();
+        List<Long> ids = distanceMap.keySet().stream().skip(from).collect(Collectors.toList());
+        // 根据id批量查询shop，按距离排序，只读取列表展示需要的字段
+        List<Shop> shops = cacheClient.queryHashMany(RedisConstants.CACHE_SHOP_HASH_KEY, ids, Shop.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES, SHOP_LIST_FIELDS);
         for (Shop shop : shops) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+            shop.setDistance(distanceMap.get(shop.getId()));
         }
         return Result.ok(shops);
     }
+
+    /**
+     * 使用redis GEO查询附近店铺，位置索引未加载或关闭时使用
+     *
+     * @return 店铺id -> 距离，按距离排序
+     */
+    private Map<Long, Double> searchGeo(Integer typeId, Double x, Double y, int limit) {
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = redisTemplate.opsForGeo().search(RedisConstants.SHOP_GEO_KEY + typeId,
+                GeoReference.fromCoordinate(x, y),
+                new Distance(SystemConstants.SHOP_GEO_RADIUS), RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(limit));
+        if (results == null) {
+            return Collections.emptyMap();
+        }
+        Map<Long, Double> distanceMap = new LinkedHashMap<>();
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results.getContent()) {
+            distanceMap.put(Long.valueOf(result.getContent().getName()), result.getDistance().getValue());
+        }
+        return distanceMap;
+    }
 }
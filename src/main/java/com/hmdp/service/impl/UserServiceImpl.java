@@ -13,6 +13,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BloomFilterRegistry;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.SystemConstants;
@@ -22,6 +23,7 @@ import org.springframework.data.redis.connection.BitFieldSubCommands;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 import java.time.LocalDateTime;
@@ -45,6 +47,13 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Resource
     private RedisTemplate<String, String> redisTemplate;
+    @Resource
+    private BloomFilterRegistry bloomFilters;
+
+    @PostConstruct
+    private void init() {
+        bloomFilters.register(SystemConstants.BLOOM_USER, baseMapper);
+    }
 
     @Resource
     private IUserService userService;
@@ -127,6 +136,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
      */
     @Override
     public Result getUserById(Long userId) {
+        if (!bloomFilters.mightContain(SystemConstants.BLOOM_USER, userId)) {
+            return Result.fail("用户不存在");
+        }
         User user = baseMapper.selectById(userId);
         if (user == null) {
             return Result.fail("用户不存在");
@@ -201,6 +213,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             user.setPassword(password);
         }
         baseMapper.insert(user);
+        bloomFilters.put(SystemConstants.BLOOM_USER, user.getId());
         return user;
     }
 }
@@ -1,8 +1,12 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.util.RuntimeUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.VoucherOrderStatus;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
@@ -13,25 +17,39 @@ import com.hmdp.utils.*;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
 import org.springframework.data.redis.connection.stream.*;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -48,79 +66,307 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private ISeckillVoucherService iSeckillVoucherService;
 
-    @Resource
-    private RedisIDWorker redisIDWorker;
+    @Resource(name = SystemConstants.ORDER_ID_WORKER)
+    private IDWorker idWorker;
 
+    /**
+     * 秒杀脚本的参数、seckill:*下的key、订单消息和订单状态都是普通字符串，不能经过json序列化
+     */
     @Resource
-    private RedisTemplate<String, String> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
     @Resource
     private RedissonClient redissonClient;
+    @Resource
+    private SeckillSoldOutRegistry soldOutRegistry;
+    @Resource
+    private SeckillStockLeaseManager stockLeaseManager;
+    @Resource
+    private SeckillMetrics seckillMetrics;
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> SECKILL_ORDER_SCRIPT;
+    private static final DefaultRedisScript<Long> ORDER_STATUS_SCRIPT;
+    /**
+     * lua脚本返回值对应的失败原因
+     */
+    private static final String[] SECKILL_FAIL_MESSAGES = {"", "库存不足", "不可重复购买", "秒杀尚未开始", "秒杀已经结束", "优惠券已下架", "库存租约已失效，请重试"};
 
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
         SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
         SECKILL_SCRIPT.setResultType(Long.class);
+        SECKILL_ORDER_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_ORDER_SCRIPT.setLocation(new ClassPathResource("seckill_order.lua"));
+        SECKILL_ORDER_SCRIPT.setResultType(Long.class);
+        ORDER_STATUS_SCRIPT = new DefaultRedisScript<>();
+        ORDER_STATUS_SCRIPT.setLocation(new ClassPathResource("order_status.lua"));
+        ORDER_STATUS_SCRIPT.setResultType(Long.class);
     }
 
      private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 1024);
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newFixedThreadPool(SystemConstants.SECKILL_ORDER_CONSUMERS);
+    /**
+     * 消费者名前缀 主机名 + 进程号，保证多个实例在消费者组g1中的消费者名唯一
+     */
+    private static final String CONSUMER_PREFIX = NetUtil.getLocalHostName() + "-" + RuntimeUtil.getPid() + "-c";
+    private static final String RECOVERY_CONSUMER = CONSUMER_PREFIX + "-recovery";
+    private static final ScheduledExecutorService PENDING_RECOVERY_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+    /**
+     * 代理对象（事务），消费者和恢复任务启动时可能还没有请求进来，不能等seckillVoucher中通过AopContext获取
+     */
+    @Lazy
+    @Resource
     private IVoucherOrderService proxy;
-    private Long voucherId;
+    private volatile boolean running = true;
 
     @PostConstruct
     private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(() -> {
-            while (true) {
-                try {
-                    // 获取消息队列中的订单信息
-                    List<MapRecord<String, Object, Object>> list = redisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(RedisConstants.STREAM_ORDERS, ReadOffset.lastConsumed()));
-                    // 判断消息是否获取成功
-                    if (list == null || list.isEmpty()) {
-                        // 获取失败说明没有消息，继续下一次循环
-                        continue;
-                    }
-                    // 解析消息中的订单信息
-                    parsingOrder(list);
-                } catch (Exception e) {
-                    log.error("处理订单异常", e);
-                    handlePendingList();
-                }
-            }
-        });
+        createGroupIfAbsent();
+        // 启动多个消费者，同组内的消费者分摊stream.orders中的消息
+        for (int i = 0; i < SystemConstants.SECKILL_ORDER_CONSUMERS; i++) {
+            Consumer consumer = Consumer.from(RedisConstants.STREAM_ORDERS_GROUP, CONSUMER_PREFIX + i);
+            SECKILL_ORDER_EXECUTOR.submit(() -> consumeOrders(consumer));
+        }
+        // 恢复任务和消费者并行运行
+        PENDING_RECOVERY_EXECUTOR.scheduleWithFixedDelay(this::recoverPendingOrders,
+                0, SystemConstants.SECKILL_PENDING_RECOVERY_INTERVAL, TimeUnit.SECONDS);
     }
 
-    private void handlePendingList() {
-        while (true) {
-            try {
-                // 获取pendingList的订单信息
-                List<MapRecord<String, Object, Object>> list = redisTemplate.opsForStream().read(
-                        Consumer.from("g1", "c1"),
-                        StreamReadOptions.empty().count(1),
-                        StreamOffset.create(RedisConstants.STREAM_ORDERS, ReadOffset.from("0")));
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        SECKILL_ORDER_EXECUTOR.shutdown();
+        PENDING_RECOVERY_EXECUTOR.shutdown();
+    }
 
-                // 判断pendingList是否为空
+    /**
+     * 创建消费者组，stream不存在时一并创建
+     */
+    private void createGroupIfAbsent() {
+        byte[] rawKey = RedisSerializer.string().serialize(RedisConstants.STREAM_ORDERS);
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.xGroupCreate(rawKey, RedisConstants.STREAM_ORDERS_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            // BUSYGROUP 消费者组已经存在
+            log.debug("消费者组已存在: {}", e.getMessage());
+        }
+    }
+
+    private void consumeOrders(Consumer consumer) {
+        while (running) {
+            try {
+                // 批量获取消息队列中的订单信息
+                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                        consumer,
+                        StreamReadOptions.empty().count(SystemConstants.SECKILL_ORDER_BATCH_SIZE).block(Duration.ofSeconds(2)),
+                        StreamOffset.create(RedisConstants.STREAM_ORDERS, ReadOffset.lastConsumed()));
+                // 判断消息是否获取成功
                 if (list == null || list.isEmpty()) {
-                    // 为空说明pendingList没有异常信息 结束循环
-                    break;
+                    // 获取失败说明没有消息，继续下一次循环
+                    continue;
                 }
                 // 解析消息中的订单信息
                 parsingOrder(list);
             } catch (Exception e) {
-                log.error("处理pendingList订单异常", e);
+                // 未确认的消息留在pendingList，由恢复任务重新处理
+                log.error("处理订单异常", e);
+            }
+        }
+    }
+
+    /**
+     * 恢复pendingList中超时未确认的订单，包括已经宕机的实例留下的消息
+     * XPENDING找出空闲超过阈值的消息，XCLAIM转移给恢复消费者后逐条处理
+     * 投递次数超过上限的消息转入死信队列stream.orders.dlq，不再阻塞订单处理
+     */
+    private void recoverPendingOrders() {
+        try {
+            // 上一页的最后一条消息，exclusive范围需要redis6.2，这里用包含边界的范围分页并跳过这条消息
+            String lastId = null;
+            while (running) {
+                Range<String> range = lastId == null ? Range.unbounded()
+                        : Range.of(Range.Bound.inclusive(lastId), Range.Bound.unbounded());
+                // 多取一条，抵掉可能重复返回的上一页最后一条
+                long count = lastId == null ? SystemConstants.SECKILL_ORDER_BATCH_SIZE : SystemConstants.SECKILL_ORDER_BATCH_SIZE + 1;
+                PendingMessages pending = stringRedisTemplate.opsForStream().pending(RedisConstants.STREAM_ORDERS,
+                        RedisConstants.STREAM_ORDERS_GROUP, range, count);
+                if (pending == null || pending.isEmpty()) {
+                    break;
+                }
+                Map<RecordId, Long> deliveries = new HashMap<>(pending.size());
+                boolean hasNew = false;
+                for (PendingMessage message : pending) {
+                    if (message.getIdAsString().equals(lastId)) {
+                        continue;
+                    }
+                    hasNew = true;
+                    if (message.getElapsedTimeSinceLastDelivery().getSeconds() >= SystemConstants.SECKILL_PENDING_IDLE) {
+                        deliveries.put(message.getId(), message.getTotalDeliveryCount());
+                    }
+                }
+                if (!hasNew) {
+                    break;
+                }
+                if (!deliveries.isEmpty()) {
+                    recoverOrders(claim(deliveries.keySet()), deliveries);
+                }
+                lastId = pending.get(pending.size() - 1).getIdAsString();
+            }
+            removeIdleConsumers();
+        } catch (Exception e) {
+            log.error("处理pendingList订单异常", e);
+        }
+    }
+
+    /**
+     * 把消息转移给当前实例的恢复消费者，其他实例已经认领的消息空闲时间会重置，不会被重复认领
+     */
+    private List<MapRecord<String, Object, Object>> claim(Collection<RecordId> ids) {
+        byte[] rawKey = RedisSerializer.string().serialize(RedisConstants.STREAM_ORDERS);
+        List<ByteRecord> records = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.xClaim(rawKey, RedisConstants.STREAM_ORDERS_GROUP, RECOVERY_CONSUMER,
+                        RedisStreamCommands.XClaimOptions.minIdle(Duration.ofSeconds(SystemConstants.SECKILL_PENDING_IDLE))
+                                .ids(ids.toArray(new RecordId[0]))));
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        return records.stream().map(stringRedisTemplate.opsForStream()::deserializeRecord).collect(Collectors.toList());
+    }
+
+    private void recoverOrders(List<MapRecord<String, Object, Object>> records, Map<RecordId, Long> deliveries) {
+        for (MapRecord<String, Object, Object> record : records) {
+            // XCLAIM会让投递次数加一
+            long delivered = deliveries.getOrDefault(record.getId(), 0L) + 1;
+            if (delivered > SystemConstants.SECKILL_ORDER_MAX_DELIVERIES) {
+                deadLetter(record, delivered);
+                continue;
+            }
+            try {
+                // 逐条处理，一条异常订单不影响其他订单
+                parsingOrder(Collections.singletonList(record));
+            } catch (Exception e) {
+                log.error("恢复订单{}失败，已投递{}次", record.getId(), delivered, e);
             }
         }
     }
 
+    /**
+     * 转入死信队列并确认
+     */
+    private void deadLetter(MapRecord<String, Object, Object> record, long delivered) {
+        Map<Object, Object> values = new HashMap<>(record.getValue());
+        values.put("sourceId", record.getId().getValue());
+        values.put("deliveries", String.valueOf(delivered));
+        stringRedisTemplate.opsForStream().add(RedisConstants.STREAM_ORDERS_DLQ, values);
+        Object orderId = record.getValue().get("id");
+        if (orderId != null) {
+            publishOrderStatus(Collections.singletonMap(Long.valueOf(orderId.toString()), VoucherOrderStatus.FAILED));
+        }
+        stringRedisTemplate.opsForStream().acknowledge(RedisConstants.STREAM_ORDERS, RedisConstants.STREAM_ORDERS_GROUP, record.getId());
+        log.error("订单消息{}投递{}次仍失败，已转入死信队列", record.getId(), delivered);
+    }
+
+    /**
+     * 删除没有待处理消息且长时间空闲的消费者，实例重启后旧的消费者名不会再使用
+     */
+    private void removeIdleConsumers() {
+        StreamInfo.XInfoConsumers consumers = stringRedisTemplate.opsForStream().consumers(RedisConstants.STREAM_ORDERS, RedisConstants.STREAM_ORDERS_GROUP);
+        consumers.forEach(consumer -> {
+            if (consumer.pendingCount() == 0 && consumer.idleTimeMs() > TimeUnit.HOURS.toMillis(1)
+                    && !consumer.consumerName().startsWith(CONSUMER_PREFIX)) {
+                stringRedisTemplate.opsForStream().deleteConsumer(RedisConstants.STREAM_ORDERS,
+                        Consumer.from(RedisConstants.STREAM_ORDERS_GROUP, consumer.consumerName()));
+            }
+        });
+    }
+
     private void parsingOrder(List<MapRecord<String, Object, Object>> list) {
-        MapRecord<String, Object, Object> record = list.get(0);
-        Map<Object, Object> values = record.getValue();
-        VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-        handleVoucherOrder(voucherOrder);
-        redisTemplate.opsForStream().acknowledge(RedisConstants.STREAM_ORDERS, "g1", record.getId());
+        long begin = System.currentTimeMillis();
+        try {
+            if (SystemConstants.SECKILL_ORDER_BATCH_PERSIST) {
+                persistBatch(list);
+            } else {
+                persistEach(list);
+            }
+        } finally {
+            seckillMetrics.recordBatch(System.currentTimeMillis() - begin, list.size());
+        }
+    }
+
+    /**
+     * 逐条写入模式，每个订单单独加锁和提交
+     */
+    private void persistEach(List<MapRecord<String, Object, Object>> list) {
+        List<RecordId> handled = new ArrayList<>(list.size());
+        Map<Long, VoucherOrderStatus> statuses = new HashMap<>(list.size());
+        try {
+            for (MapRecord<String, Object, Object> record : list) {
+                Map<Object, Object> values = record.getValue();
+                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
+                VoucherOrderStatus status = handleVoucherOrder(voucherOrder);
+                statuses.put(voucherOrder.getId(), status);
+                handled.add(record.getId());
+                if (status == VoucherOrderStatus.PERSISTED) {
+                    seckillMetrics.recordPersisted(record.getId());
+                }
+            }
+        } finally {
+            publishOrderStatus(statuses);
+            // 批量确认已处理的消息，处理失败的消息留在pendingList中
+            if (!handled.isEmpty()) {
+                stringRedisTemplate.opsForStream().acknowledge(RedisConstants.STREAM_ORDERS, RedisConstants.STREAM_ORDERS_GROUP,
+                        handled.toArray(new RecordId[0]));
+            }
+        }
+    }
+
+    /**
+     * 批量写入模式，整批订单在一个事务中保存
+     */
+    private void persistBatch(List<MapRecord<String, Object, Object>> list) {
+        List<VoucherOrder> voucherOrders = new ArrayList<>(list.size());
+        RecordId[] recordIds = new RecordId[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            MapRecord<String, Object, Object> record = list.get(i);
+            voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            recordIds[i] = record.getId();
+        }
+        Map<Long, VoucherOrderStatus> statuses = proxy.createVoucherOrders(voucherOrders);
+        for (int i = 0; i < voucherOrders.size(); i++) {
+            Long orderId = voucherOrders.get(i).getId();
+            VoucherOrderStatus status = statuses.get(orderId);
+            if (status == VoucherOrderStatus.PERSISTED) {
+                seckillMetrics.recordPersisted(recordIds[i]);
+            } else {
+                log.error("订单{}保存失败: {}", orderId, status == null ? null : status.getDesc());
+            }
+        }
+        // 事务提交后再发布结果
+        publishOrderStatus(statuses);
+        // 失败的订单是重复下单或库存不足，重试也不会成功，和成功的订单一起确认
+        stringRedisTemplate.opsForStream().acknowledge(RedisConstants.STREAM_ORDERS, RedisConstants.STREAM_ORDERS_GROUP, recordIds);
+    }
+
+    /**
+     * 发布订单处理结果，一次脚本调用批量写入，客户端通过订单id轮询
+     * 已经是下单成功的订单不会被重复投递的消息改成其他状态
+     */
+    private void publishOrderStatus(Map<Long, VoucherOrderStatus> statuses) {
+        if (statuses.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<>(statuses.size() * 2 + 1);
+        args.add(RedisConstants.ORDER_STATUS_TTL.toString());
+        statuses.forEach((orderId, status) -> {
+            args.add(orderId.toString());
+            args.add(String.valueOf(status.getCode()));
+        });
+        try {
+            stringRedisTemplate.execute(ORDER_STATUS_SCRIPT, Collections.emptyList(), args.toArray());
+        } catch (Exception e) {
+            // 订单已经处理完成，结果发布失败不影响确认
+            log.error("发布订单处理结果失败", e);
+        }
     }
 
     /**
@@ -140,17 +386,17 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 //            }
 //        });
 //    }
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
+    private VoucherOrderStatus handleVoucherOrder(VoucherOrder voucherOrder) {
         Long userId = voucherOrder.getUserId();
-        SeckillVoucher voucher = iSeckillVoucherService.getById(voucherId);
+        SeckillVoucher voucher = iSeckillVoucherService.getById(voucherOrder.getVoucherId());
         RLock lock = redissonClient.getLock(RedisConstants.ORDER_PREFIX + userId);
         boolean isLock = lock.tryLock();
         if (!isLock) {
             log.error("不允许重复下单");
-            return;
+            return VoucherOrderStatus.DUPLICATE;
         }
         try {
-            proxy.createVoucherOrder(voucherOrder, voucher.getStock());
+            return proxy.createVoucherOrder(voucherOrder, voucher.getStock());
         } finally {
             lock.unlock();
         }
@@ -160,21 +406,45 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Override
     @Transactional
     public Result seckillVoucher(Long voucherId) {
-        this.voucherId = voucherId;
         // 获取用户
         Long userId = UserHolder.getUser().getId();
+        if (SystemConstants.SECKILL_STOCK_LEASE) {
+            // 先扣本地租用的库存，本地用完时才检查售罄标记，并在校验秒杀时间后向redis续租
+            int r = stockLeaseManager.tryAcquire(voucherId);
+            if (r != 0) {
+                return Result.fail(SECKILL_FAIL_MESSAGES[r]);
+            }
+        } else if (soldOutRegistry.isSoldOut(voucherId)) {
+            // 本地已标记售罄，不再访问redis
+            return Result.fail("库存不足");
+        }
         // 订单Id
-        long orderId = redisIDWorker.nextId(RedisConstants.ORDER);
-        // 执行Lua脚本
-        Long resultId = redisTemplate.execute(SECKILL_SCRIPT, Collections.emptyList(), voucherId.toString(), userId.toString(), String.valueOf(orderId));
+        long orderId = idWorker.nextId(RedisConstants.ORDER);
+        // 执行Lua脚本，租用库存模式下库存已在本地扣减，脚本只校验一人一单
+        Long resultId = SystemConstants.SECKILL_STOCK_LEASE
+                ? stringRedisTemplate.execute(SECKILL_ORDER_SCRIPT, Collections.emptyList(), voucherId.toString(),
+                        userId.toString(), String.valueOf(orderId), RedisConstants.ORDER_STATUS_TTL.toString(),
+                        stockLeaseManager.getNodeId())
+                : stringRedisTemplate.execute(SECKILL_SCRIPT, Collections.emptyList(), voucherId.toString(),
+                        userId.toString(), String.valueOf(orderId), RedisConstants.ORDER_STATUS_TTL.toString());
         // resultId如果等于1说明库存不足
         int r = Objects.requireNonNull(resultId).intValue();
+        if (r == 6) {
+            // 租约已被回收，本地剩余的库存全部作废，下次请求重新租用
+            stockLeaseManager.invalidate(voucherId);
+        } else if (r != 0 && SystemConstants.SECKILL_STOCK_LEASE) {
+            // 没有下单成功，本地扣减的库存还回去
+            stockLeaseManager.release(voucherId);
+        }
+        if (r == 1) {
+            // 库存不足，标记售罄并通知其他节点
+            soldOutRegistry.markSoldOut(voucherId);
+        }
         if (r != 0) {
             // 不为0 没有购买资格
-            return Result.fail(resultId == 1 ? "库存不足" : "不可重复购买");
+            return Result.fail(SECKILL_FAIL_MESSAGES[r]);
         }
 
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
         return Result.ok(orderId);
     }
 
@@ -214,28 +484,86 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 //    }
 
     @Transactional
-    public void createVoucherOrder(VoucherOrder voucherOrder, Integer stock) {
+    public VoucherOrderStatus createVoucherOrder(VoucherOrder voucherOrder, Integer stock) {
         // 一人只可以购买一次
         Long userId = voucherOrder.getUserId();
         LambdaUpdateWrapper<VoucherOrder> countWrapper = new LambdaUpdateWrapper<>();
         // 查询订单
-        countWrapper.eq(VoucherOrder::getId, userId).eq(VoucherOrder::getVoucherId, voucherOrder.getVoucherId());
+        countWrapper.eq(VoucherOrder::getUserId, userId).eq(VoucherOrder::getVoucherId, voucherOrder.getVoucherId());
         Long count = baseMapper.selectCount(countWrapper);
         if (count > 0) {
             log.error("限购一次");
-            return;
+            return VoucherOrderStatus.DUPLICATE;
         }
         //3.1 充足扣减库存
         LambdaUpdateWrapper<SeckillVoucher> wrapper = new LambdaUpdateWrapper<>();
-        wrapper.set(SeckillVoucher::getStock, stock - 1)
+        wrapper.setSql("stock = stock - 1")
                 .eq(SeckillVoucher::getVoucherId, voucherOrder.getVoucherId())
                 .gt(SeckillVoucher::getStock, 0);
         boolean success = iSeckillVoucherService.update(wrapper);
         if (!success) {
             // 扣减失败
             log.error("库存不足");
-            return;
+            return VoucherOrderStatus.OUT_OF_STOCK;
         }
         baseMapper.insert(voucherOrder);
+        return VoucherOrderStatus.PERSISTED;
+    }
+
+    @Override
+    @Transactional
+    public Map<Long, VoucherOrderStatus> createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        Map<Long, VoucherOrderStatus> statuses = new HashMap<>(voucherOrders.size());
+        List<VoucherOrder> accepted = new ArrayList<>(voucherOrders.size());
+        // 按优惠券分组，每个优惠券只扣减一次库存
+        Map<Long, List<VoucherOrder>> ordersOfVoucher = voucherOrders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        ordersOfVoucher.forEach((voucherId, orders) -> {
+            // 一人只可以购买一次，查询这批用户已有的订单
+            Set<Long> userIds = orders.stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+            Set<Long> boughtUsers = baseMapper.selectList(new LambdaQueryWrapper<VoucherOrder>()
+                            .select(VoucherOrder::getUserId)
+                            .eq(VoucherOrder::getVoucherId, voucherId)
+                            .in(VoucherOrder::getUserId, userIds))
+                    .stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+            List<VoucherOrder> candidates = new ArrayList<>(orders.size());
+            for (VoucherOrder order : orders) {
+                // add返回false说明该用户已有订单或本批次中已出现过
+                if (!boughtUsers.add(order.getUserId())) {
+                    statuses.put(order.getId(), VoucherOrderStatus.DUPLICATE);
+                    continue;
+                }
+                candidates.add(order);
+            }
+            if (candidates.isEmpty()) {
+                return;
+            }
+            // 扣减库存 stock = stock - k
+            int deducted = iSeckillVoucherService.deductStock(voucherId, candidates.size());
+            for (int i = 0; i < candidates.size(); i++) {
+                if (i < deducted) {
+                    accepted.add(candidates.get(i));
+                    statuses.put(candidates.get(i).getId(), VoucherOrderStatus.PERSISTED);
+                } else {
+                    statuses.put(candidates.get(i).getId(), VoucherOrderStatus.OUT_OF_STOCK);
+                }
+            }
+        });
+        if (!accepted.isEmpty()) {
+            baseMapper.insertBatch(accepted);
+        }
+        return statuses;
+    }
+
+    @Override
+    public Result queryOrderStatus(Long orderId) {
+        // 订单id可以被猜到，只有下单用户本人能查到状态
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(RedisConstants.ORDER_STATUS_KEY + orderId,
+                Arrays.asList("code", "userId"));
+        Object code = values.get(0);
+        if (code == null || !UserHolder.getUser().getId().toString().equals(values.get(1))) {
+            return Result.fail("订单不存在或已过期");
+        }
+        return Result.ok(VoucherOrderStatus.of(Integer.parseInt(code.toString())));
     }
 }
@@ -8,12 +8,17 @@ import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
 import com.hmdp.utils.RedisConstants;
-import org.springframework.data.redis.core.RedisTemplate;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -30,7 +35,10 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
 
     @Resource
-    private RedisTemplate<String, String> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private SeckillSoldOutRegistry soldOutRegistry;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
@@ -52,7 +60,44 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 秒杀时间和状态保存到redis，由lua脚本校验
+        saveSeckillMeta(voucher);
         // 优惠券保存到redis
-        redisTemplate.opsForValue().set(RedisConstants.SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        saveSeckillStock(voucher.getId(), voucher.getStock());
+    }
+
+    /**
+     * 保存秒杀元数据 begin、end为毫秒时间戳，status为优惠券状态
+     * lua脚本用tonumber读取，必须以普通字符串写入，不能经过json序列化
+     *
+     * @param voucher 优惠券
+     */
+    private void saveSeckillMeta(Voucher voucher) {
+        Map<String, String> meta = new HashMap<>(4);
+        if (voucher.getBeginTime() != null) {
+            meta.put("begin", String.valueOf(toEpochMilli(voucher.getBeginTime())));
+        }
+        if (voucher.getEndTime() != null) {
+            meta.put("end", String.valueOf(toEpochMilli(voucher.getEndTime())));
+        }
+        // 状态默认1 上架
+        meta.put("status", String.valueOf(voucher.getStatus() == null ? 1 : voucher.getStatus()));
+        stringRedisTemplate.opsForHash().putAll(RedisConstants.SECKILL_VOUCHER_KEY + voucher.getId(), meta);
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 保存秒杀库存，lua脚本按数字读取，必须以普通字符串写入
+     *
+     * @param voucherId 优惠券id
+     * @param stock     库存
+     */
+    private void saveSeckillStock(Long voucherId, int stock) {
+        stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_STOCK_KEY + voucherId, String.valueOf(stock));
+        // 有库存了，清除所有节点的售罄标记
+        soldOutRegistry.reset(voucherId);
     }
 }
@@ -0,0 +1,380 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制编码，用于实体类这类只包含基本类型、字符串和时间字段的对象
+ * 格式：魔数(0) + 版本号 + 字段结构指纹(4字节) + 空值位图 + 非空字段的值
+ * 整数使用变长编码，字段结构变化（增删字段、改类型）后指纹不同，旧数据按未命中处理
+ * JSON的第一个字节不可能是0，所以两种格式可以同时存在
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final byte MAGIC = 0;
+    public static final byte VERSION = 1;
+    private static final int MAX_FIELDS = 64;
+
+    private final Map<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return schema(type) != Schema.UNSUPPORTED;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Schema schema = schema(value.getClass());
+        if (schema == Schema.UNSUPPORTED) {
+            throw new IllegalArgumentException("不支持二进制编码的类型: " + value.getClass());
+        }
+        try {
+            Object[] values = new Object[schema.fields.length];
+            long nulls = 0;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = schema.fields[i].get(value);
+                if (values[i] == null) {
+                    nulls |= 1L << i;
+                }
+            }
+            Output out = new Output(128);
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(schema.fingerprint);
+            out.writeVarLong(nulls);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    write(out, schema.kinds[i], values[i]);
+                }
+            }
+            return out.toByteArray();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 数据被截断或者损坏时返回null，按未命中处理
+     */
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        if (bytes == null || bytes.length < 6 || bytes[0] != MAGIC || bytes[1] != VERSION) {
+            return null;
+        }
+        Schema schema = schema(type);
+        Input in = new Input(bytes, 2);
+        if (schema == Schema.UNSUPPORTED || in.readInt() != schema.fingerprint) {
+            return null;
+        }
+        try {
+            T result = type.cast(schema.constructor.newInstance());
+            long nulls = in.readVarLong();
+            for (int i = 0; i < schema.fields.length; i++) {
+                if ((nulls & (1L << i)) == 0) {
+                    schema.fields[i].set(result, read(in, schema.kinds[i]));
+                }
+            }
+            // 读完所有字段后还有剩余数据，说明数据已损坏
+            return in.position == bytes.length ? result : null;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | DateTimeException e) {
+            // 越界、非法的数字或时间，说明数据已损坏
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Schema schema(Class<?> type) {
+        return schemas.computeIfAbsent(type, Schema::of);
+    }
+
+    private static void write(Output out, Kind kind, Object value) {
+        switch (kind) {
+            case LONG:
+                out.writeVarLong(zigZag((Long) value));
+                break;
+            case INT:
+                out.writeVarLong(zigZag((Integer) value));
+                break;
+            case SHORT:
+                out.writeVarLong(zigZag((Short) value));
+                break;
+            case BYTE:
+                out.writeByte((Byte) value);
+                break;
+            case BOOLEAN:
+                out.writeByte((Boolean) value ? 1 : 0);
+                break;
+            case DOUBLE:
+                out.writeLong(Double.doubleToRawLongBits((Double) value));
+                break;
+            case FLOAT:
+                out.writeInt(Float.floatToRawIntBits((Float) value));
+                break;
+            case STRING:
+                out.writeString((String) value);
+                break;
+            case BIG_DECIMAL:
+                out.writeString(value.toString());
+                break;
+            case LOCAL_DATE_TIME:
+                LocalDateTime time = (LocalDateTime) value;
+                out.writeVarLong(zigZag(time.toEpochSecond(ZoneOffset.UTC)));
+                out.writeVarLong(time.getNano());
+                break;
+            case LOCAL_DATE:
+                out.writeVarLong(zigZag(((LocalDate) value).toEpochDay()));
+                break;
+            default:
+                throw new IllegalStateException(kind.name());
+        }
+    }
+
+    private static Object read(Input in, Kind kind) {
+        switch (kind) {
+            case LONG:
+                return unZigZag(in.readVarLong());
+            case INT:
+                return (int) unZigZag(in.readVarLong());
+            case SHORT:
+                return (short) unZigZag(in.readVarLong());
+            case BYTE:
+                return in.readByte();
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case STRING:
+                return in.readString();
+            case BIG_DECIMAL:
+                return new BigDecimal(in.readString());
+            case LOCAL_DATE_TIME:
+                long seconds = unZigZag(in.readVarLong());
+                return LocalDateTime.ofEpochSecond(seconds, (int) in.readVarLong(), ZoneOffset.UTC);
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(unZigZag(in.readVarLong()));
+            default:
+                throw new IllegalStateException(kind.name());
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private enum Kind {
+        LONG, INT, SHORT, BYTE, BOOLEAN, DOUBLE, FLOAT, STRING, BIG_DECIMAL, LOCAL_DATE_TIME, LOCAL_DATE;
+
+        private static Kind of(Class<?> type) {
+            if (type == Long.class || type == long.class) {
+                return LONG;
+            }
+            if (type == Integer.class || type == int.class) {
+                return INT;
+            }
+            if (type == Short.class || type == short.class) {
+                return SHORT;
+            }
+            if (type == Byte.class || type == byte.class) {
+                return BYTE;
+            }
+            if (type == Boolean.class || type == boolean.class) {
+                return BOOLEAN;
+            }
+            if (type == Double.class || type == double.class) {
+                return DOUBLE;
+            }
+            if (type == Float.class || type == float.class) {
+                return FLOAT;
+            }
+            if (type == String.class) {
+                return STRING;
+            }
+            if (type == BigDecimal.class) {
+                return BIG_DECIMAL;
+            }
+            if (type == LocalDateTime.class) {
+                return LOCAL_DATE_TIME;
+            }
+            if (type == LocalDate.class) {
+                return LOCAL_DATE;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 一个类的字段结构，字段按名称排序
+     */
+    private static final class Schema {
+        private static final Schema UNSUPPORTED = new Schema(null, new Field[0], new Kind[0], 0);
+
+        private final Constructor<?> constructor;
+        private final Field[] fields;
+        private final Kind[] kinds;
+        private final int fingerprint;
+
+        private Schema(Constructor<?> constructor, Field[] fields, Kind[] kinds, int fingerprint) {
+            this.constructor = constructor;
+            this.fields = fields;
+            this.kinds = kinds;
+            this.fingerprint = fingerprint;
+        }
+
+        private static Schema of(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        fields.add(field);
+                    }
+                }
+            }
+            if (fields.isEmpty() || fields.size() > MAX_FIELDS) {
+                return UNSUPPORTED;
+            }
+            fields.sort(Comparator.comparing(Field::getName));
+            Kind[] kinds = new Kind[fields.size()];
+            StringBuilder signature = new StringBuilder(type.getName());
+            for (int i = 0; i < kinds.length; i++) {
+                Field field = fields.get(i);
+                kinds[i] = Kind.of(field.getType());
+                if (kinds[i] == null) {
+                    return UNSUPPORTED;
+                }
+                field.setAccessible(true);
+                signature.append(';').append(field.getName()).append(':').append(field.getType().getName());
+            }
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return new Schema(constructor, fields.toArray(new Field[0]), kinds, signature.toString().hashCode());
+            } catch (NoSuchMethodException e) {
+                return UNSUPPORTED;
+            }
+        }
+    }
+
+    private static final class Output {
+        private byte[] buffer;
+        private int position;
+
+        private Output(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        private void ensure(int size) {
+            if (position + size > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + size));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buffer;
+        private int position;
+
+        private Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        private byte readByte() {
+            return buffer[position++];
+        }
+
+        private int readInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private String readString() {
+            int length = (int) readVarLong();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
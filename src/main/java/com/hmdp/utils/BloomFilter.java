@@ -0,0 +1,84 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 本地布隆过滤器，元素为long类型的主键
+ * 位数组用AtomicLongArray保存，写入和查询都不加锁
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+
+    private BloomFilter(long bitSize, int hashFunctions) {
+        this.words = new AtomicLongArray((int) ((bitSize + 63) >>> 6));
+        this.bitSize = (long) words.length() << 6;
+        this.hashFunctions = hashFunctions;
+    }
+
+    /**
+     * 按预计元素数量和误判率计算位数组大小，超过内存上限时按上限分配（误判率会升高）
+     *
+     * @param expectedInsertions 预计元素数量
+     * @param fpp                期望误判率
+     * @param maxBytes           位数组最多占用的字节数
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp, long maxBytes) {
+        long n = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        bits = Math.max(64, Math.min(bits, maxBytes * 8));
+        int hashFunctions = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+        return new BloomFilter(bits, hashFunctions);
+    }
+
+    public void put(long id) {
+        long hash1 = mix(id);
+        long hash2 = mix(hash1 ^ id);
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            while (true) {
+                long current = words.get(word);
+                if ((current & mask) != 0 || words.compareAndSet(word, current, current | mask)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false说明一定不存在，true说明可能存在
+     */
+    public boolean mightContain(long id) {
+        long hash1 = mix(id);
+        long hash2 = mix(hash1 ^ id);
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * SplitMix64的混淆函数，连续的主键也能均匀分布
+     */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
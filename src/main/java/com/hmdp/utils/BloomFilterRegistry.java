@@ -0,0 +1,217 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按实体类型（商铺、用户、笔记）维护的布隆过滤器，防止不存在的id穿透到redis和数据库
+ * 启动时从表中加载全部主键，新增数据时通过redis发布订阅同步到所有节点，并定期重建（清理已删除的数据、按数据量重新分配大小）
+ * 发布订阅的消息可能丢失（断线重连、节点启动时），批量插入和直接执行的sql也不会通知，所以每隔几秒按主键增量加载新数据
+ * 过滤器还没有建好或者建立失败时，所有id都视为可能存在
+ */
+@Slf4j
+@Component
+public class BloomFilterRegistry implements MessageListener {
+
+    private static final ScheduledExecutorService BLOOM_REBUILD_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    @Resource
+    private RedisTemplate<String, String> redisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final Map<String, Holder> filters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.BLOOM_ADD_CHANNEL));
+        BLOOM_REBUILD_EXECUTOR.scheduleWithFixedDelay(() -> filters.forEach(this::rebuild),
+                SystemConstants.BLOOM_REBUILD_INTERVAL, SystemConstants.BLOOM_REBUILD_INTERVAL, TimeUnit.HOURS);
+        BLOOM_REBUILD_EXECUTOR.scheduleWithFixedDelay(() -> filters.forEach(this::sync),
+                SystemConstants.BLOOM_SYNC_INTERVAL, SystemConstants.BLOOM_SYNC_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        BLOOM_REBUILD_EXECUTOR.shutdown();
+    }
+
+    /**
+     * 注册一个过滤器并立即从表中加载主键，表的主键列必须是id
+     *
+     * @param name   过滤器名称
+     * @param mapper 对应表的mapper
+     */
+    public <T> void register(String name, BaseMapper<T> mapper) {
+        Holder holder = new Holder(new IdLoader<>(mapper));
+        filters.put(name, holder);
+        rebuild(name, holder);
+    }
+
+    public boolean mightContain(String name, Long id) {
+        Holder holder = filters.get(name);
+        if (holder == null || id == null) {
+            return true;
+        }
+        BloomFilter filter = holder.filter;
+        if (filter == null || filter.mightContain(id)) {
+            return true;
+        }
+        // 比已加载的最大id稍大的id可能是还没有同步到过滤器的新数据，交给缓存和数据库判断
+        long maxId = holder.maxId;
+        return id > maxId && id - maxId <= SystemConstants.BLOOM_RECENT_ID_WINDOW;
+    }
+
+    /**
+     * 新增数据后调用，通知所有节点
+     *
+     * @param name 过滤器名称
+     * @param id   新增数据的id
+     */
+    public void put(String name, Long id) {
+        if (id == null) {
+            return;
+        }
+        putLocal(name, id);
+        redisTemplate.convertAndSend(RedisConstants.BLOOM_ADD_CHANNEL, name + ":" + id);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = String.valueOf(redisTemplate.getValueSerializer().deserialize(message.getBody()));
+        int index = body.lastIndexOf(':');
+        try {
+            putLocal(body.substring(0, index), Long.valueOf(body.substring(index + 1)));
+        } catch (RuntimeException e) {
+            log.error("无法解析布隆过滤器消息: {}", body);
+        }
+    }
+
+    private void putLocal(String name, Long id) {
+        Holder holder = filters.get(name);
+        if (holder == null) {
+            return;
+        }
+        // 重建期间新增的id同时写入新过滤器，防止切换后丢失
+        BloomFilter rebuilding = holder.rebuilding;
+        if (rebuilding != null) {
+            rebuilding.put(id);
+        }
+        BloomFilter filter = holder.filter;
+        if (filter != null) {
+            filter.put(id);
+        }
+    }
+
+    private void rebuild(String name, Holder holder) {
+        synchronized (holder) {
+            try {
+                long count = holder.loader.count();
+                BloomFilter filter = BloomFilter.create((long) (count * SystemConstants.BLOOM_GROWTH_FACTOR) + SystemConstants.BLOOM_LOAD_BATCH,
+                        SystemConstants.BLOOM_FPP, SystemConstants.BLOOM_MAX_BYTES);
+                holder.rebuilding = filter;
+                long maxId = holder.loader.load(filter, 0);
+                holder.filter = filter;
+                holder.maxId = maxId;
+                holder.syncFrom = maxId;
+                log.info("布隆过滤器{}加载{}个id，{}位，{}个哈希函数", name, count, filter.bitSize(), filter.hashFunctions());
+            } catch (Exception e) {
+                // 保留旧的过滤器
+                log.error("布隆过滤器{}重建失败", name, e);
+            } finally {
+                holder.rebuilding = null;
+            }
+        }
+    }
+
+    /**
+     * 增量加载上次同步之后新增的数据
+     * 自增id分配后可能晚一些才提交，每次从上一轮同步前的最大id开始加载，新增的id会被扫描两次
+     */
+    private void sync(String name, Holder holder) {
+        synchronized (holder) {
+            BloomFilter filter = holder.filter;
+            if (filter == null) {
+                return;
+            }
+            try {
+                long last = holder.loader.load(filter, holder.syncFrom);
+                holder.syncFrom = holder.maxId;
+                holder.maxId = Math.max(holder.maxId, last);
+            } catch (Exception e) {
+                log.error("布隆过滤器{}同步失败", name, e);
+            }
+        }
+    }
+
+    private static final class Holder {
+        private final IdLoader<?> loader;
+        private volatile BloomFilter filter;
+        private volatile BloomFilter rebuilding;
+        /**
+         * 已经加载到过滤器中的最大id
+         */
+        private volatile long maxId;
+        /**
+         * 下一次增量同步的起始id（不包含）
+         */
+        private long syncFrom;
+
+        private Holder(IdLoader<?> loader) {
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * 按主键游标分批加载id，避免一次查询全表
+     */
+    private static final class IdLoader<T> {
+        private final BaseMapper<T> mapper;
+
+        private IdLoader(BaseMapper<T> mapper) {
+            this.mapper = mapper;
+        }
+
+        private long count() {
+            Long count = mapper.selectCount(null);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * 加载大于afterId的全部id，主键都是从1开始的自增id
+         *
+         * @return 加载到的最大id，没有数据时返回afterId
+         */
+        private long load(BloomFilter filter, long afterId) {
+            long last = afterId;
+            while (true) {
+                List<Object> ids = mapper.selectObjs(new QueryWrapper<T>().select("id").gt("id", last)
+                        .orderByAsc("id").last("LIMIT " + SystemConstants.BLOOM_LOAD_BATCH));
+                for (Object id : ids) {
+                    last = ((Number) id).longValue();
+                    filter.put(last);
+                }
+                if (ids.size() < SystemConstants.BLOOM_LOAD_BATCH) {
+                    return last;
+                }
+            }
+        }
+    }
+}
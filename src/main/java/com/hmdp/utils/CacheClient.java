@@ -1,5 +1,8 @@
 package com.hmdp.utils;
 
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
@@ -7,28 +10,240 @@ import cn.hutool.json.JSONUtil;
 import com.hmdp.entity.Shop;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
-public class CacheClient {
+public class CacheClient implements MessageListener {
 
     private final RedisTemplate<String, String> redisTemplate;
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    private final RedisMessageListenerContainer listenerContainer;
+    private final BloomFilterRegistry bloomFilters;
+    private final CacheStats cacheStats;
+    private final HotKeyDetector hotKeys;
+    private final CacheRefreshScheduler refreshScheduler;
+    private final NearCache nearCache;
+    /**
+     * 缓存key前缀对应的布隆过滤器
+     */
+    private final Map<String, String> bloomFilterNames = new ConcurrentHashMap<>();
+    /**
+     * 本节点正在从数据库加载的key
+     */
+    private final Map<String, CompletableFuture<Object>> loadingFutures = new ConcurrentHashMap<>();
+    /**
+     * 一级缓存，保存反序列化后的对象，命中时不访问redis
+     * 返回的是共享对象，调用方不要修改
+     */
+    private final Cache<String, Object> localCache = CacheUtil.newLRUCache(SystemConstants.CACHE_L1_CAPACITY,
+            TimeUnit.SECONDS.toMillis(SystemConstants.CACHE_L1_TTL));
+    /**
+     * 读取时按第一个字节区分编码，二进制编码以0开头，其他都按JSON解析
+     */
+    private final CacheCodec jsonCodec;
+    private final CacheCodec binaryCodec = new BinaryCacheCodec();
+    private final HashCacheMapper hashMapper = new HashCacheMapper();
+    /**
+     * 缓存的空值，防止缓存穿透
+     */
+    private static final Object NULL_VALUE = new Object();
+    private static final byte[] EMPTY = new byte[0];
+    /**
+     * 提前刷新模式写入的数据头：标记(1) + 加载耗时毫秒(4) + 过期时间戳毫秒(8)，后面是编码后的对象
+     */
+    private static final byte EARLY_REFRESH_MAGIC = 1;
+    private static final int EARLY_REFRESH_HEADER = 13;
 
-    public CacheClient(RedisTemplate<String, String> redisTemplate) {
+    @SuppressWarnings("unchecked")
+    public CacheClient(RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                       BloomFilterRegistry bloomFilters, CacheStats cacheStats, HotKeyDetector hotKeys,
+                       CacheRefreshScheduler refreshScheduler, NearCache nearCache) {
         this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.bloomFilters = bloomFilters;
+        this.cacheStats = cacheStats;
+        this.hotKeys = hotKeys;
+        this.refreshScheduler = refreshScheduler;
+        this.nearCache = nearCache;
+        this.jsonCodec = new JsonCacheCodec((RedisSerializer<Object>) redisTemplate.getValueSerializer());
+    }
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        redisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        writeValue(key, value, time, unit);
+        removeLocal(key);
+    }
+
+    /**
+     * 读取并解码缓存
+     *
+     * @return null 未命中，NULL_VALUE 缓存的空值，否则为缓存的对象
+     */
+    private Object readValue(String key, Class<?> type) {
+        return decodeValue(readRaw(key), type);
+    }
+
+    /**
+     * 读取缓存的原始字节，开启近端缓存时优先从近端缓存读取
+     */
+    private byte[] readRaw(String key) {
+        if (nearCache.isEnabled()) {
+            return nearCache.get(key);
+        }
+        return redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(key)));
+    }
+
+    private Object decodeValue(byte[] raw, Class<?> type) {
+        if (raw == null) {
+            return null;
+        }
+        if (raw.length == 0) {
+            return NULL_VALUE;
+        }
+        if (raw[0] == BinaryCacheCodec.MAGIC) {
+            // 版本或字段结构不兼容时按未命中处理，重新加载后覆盖
+            return binaryCodec.decode(raw, type);
+        }
+        if (raw[0] == EARLY_REFRESH_MAGIC) {
+            // 其他查询方式读取提前刷新模式写入的数据时跳过数据头
+            return raw.length < EARLY_REFRESH_HEADER ? null
+                    : decodeValue(Arrays.copyOfRange(raw, EARLY_REFRESH_HEADER, raw.length), type);
+        }
+        Object value = jsonCodec.decode(raw, type);
+        return value == null ? NULL_VALUE : value;
+    }
+
+    /**
+     * 编码缓存，value为null时写入空值
+     */
+    private byte[] encodeValue(Object value) {
+        if (value == null) {
+            // JSON模式下和之前一样写入空字符串，旧版本节点也能识别
+            return SystemConstants.CACHE_BINARY_CODEC ? EMPTY : jsonCodec.encode("");
+        }
+        if (SystemConstants.CACHE_BINARY_CODEC && binaryCodec.supports(value.getClass())) {
+            return binaryCodec.encode(value);
+        }
+        return jsonCodec.encode(value);
+    }
+
+    private void writeValue(String key, Object value, Long time, TimeUnit unit) {
+        byte[] raw = encodeValue(value);
+        redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.set(rawKey(key), raw, Expiration.from(time, unit), RedisStringCommands.SetOption.upsert()));
+    }
+
+    /**
+     * 查询数据库并记录耗时
+     */
+    private <R, I> R load(CacheStats.PrefixStats stats, Function<I, R> dbFallback, I id) {
+        long begin = System.nanoTime();
+        try {
+            return dbFallback.apply(id);
+        } finally {
+            stats.recordLoad(System.nanoTime() - begin);
+        }
+    }
+
+    private static byte[] rawKey(String key) {
+        return RedisSerializer.string().serialize(key);
+    }
+
+    /**
+     * 删除缓存，并通知所有节点删除一级缓存
+     *
+     * @param key 缓存key
+     */
+    public void evict(String key) {
+        redisTemplate.delete(key);
+        removeLocal(key);
+        redisTemplate.convertAndSend(RedisConstants.CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object key = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (key != null) {
+            removeLocal(key.toString());
+        }
+    }
+
+    /**
+     * 查询该前缀的缓存前先用布隆过滤器判断id是否存在
+     *
+     * @param keyPrefix  缓存key前缀
+     * @param filterName 布隆过滤器名称
+     */
+    public void bindBloomFilter(String keyPrefix, String filterName) {
+        bloomFilterNames.put(keyPrefix, filterName);
+    }
+
+    /**
+     * @return false说明id一定不存在，不需要查询redis和数据库
+     */
+    private boolean mightExist(String keyPrefix, Object id) {
+        String filterName = bloomFilterNames.get(keyPrefix);
+        if (filterName == null || !(id instanceof Number)) {
+            return true;
+        }
+        return bloomFilters.mightContain(filterName, ((Number) id).longValue());
+    }
+
+    private <R> R getLocal(String key, Class<R> type) {
+        hotKeys.record(key);
+        // 热点key固定在本地，一级缓存关闭或者被LRU淘汰时也不访问redis
+        R hot = hotKeys.get(key, type);
+        if (hot != null) {
+            return hot;
+        }
+        if (!SystemConstants.CACHE_L1_ENABLED) {
+            return null;
+        }
+        Object value = localCache.get(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    private void putLocal(String key, Object value) {
+        hotKeys.pin(key, value);
+        if (SystemConstants.CACHE_L1_ENABLED && value != null) {
+            localCache.put(key, value);
+        }
+    }
+
+    private void removeLocal(String key) {
+        localCache.remove(key);
+        hotKeys.invalidate(key);
     }
 
     /**
@@ -49,49 +264,127 @@ public class CacheClient {
 
     public <R, I> R queryWithMutex(String keyPrefix,String lockKey, I id, Function<I, R> dbFallback,Class<R> type, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
-        // 先查询缓存
-        String json = redisTemplate.opsForValue().get(key);
-        if (StrUtil.isNotBlank(json)) {
-            // 存在直接返回给前端
-            return JSONUtil.toBean(json, type);
+        CacheStats.PrefixStats stats = cacheStats.of(keyPrefix);
+        // 先查询一级缓存
+        R local = getLocal(key, type);
+        if (local != null) {
+            stats.localHits.increment();
+            return local;
+        }
+        // 布隆过滤器判断不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            stats.bloomRejects.increment();
+            return null;
         }
-        // 前面已经判断是否为空了，StrUtil.isNotBlank(shopJson)，这次不为null，说明是之前缓存的空值
-        if (json != null) {
+        // 再查询redis
+        Object cached = readValue(key, type);
+        if (cached == NULL_VALUE) {
+            // 之前缓存的空值
+            stats.nullHits.increment();
             return null;
         }
-        // 获取互斥锁
-       final String newLocKey = lockKey + id;
-        R r;
+        if (cached != null) {
+            // 存在直接返回给前端
+            stats.hits.increment();
+            R r = type.cast(cached);
+            putLocal(key, r);
+            return r;
+        }
+        stats.misses.increment();
+        // 同一个key的并发未命中在本节点只加载一次，其他线程等待同一个结果
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loadingFutures.putIfAbsent(key, loading);
+        if (inFlight != null) {
+            return awaitLoading(key, inFlight, type);
+        }
         try {
-            boolean lock = tryLock(newLocKey);
-            //判断是否获取成功
-            if (!lock) {
-                // 获取失败 递归调用
-                return queryWithMutex(keyPrefix,lockKey,id,dbFallback,type,time,unit);
-            }
-            // 获取成功,再次查询redis缓存
-            String doubleJson = redisTemplate.opsForValue().get(key);
-            if (StrUtil.isNotBlank(doubleJson)) {
-                // 存在直接返回给前端
-                return JSONUtil.toBean(doubleJson, type);
-            }
-            //redis不存在,查询数据库
-            r = dbFallback.apply(id);
-            // 判断商户是否存在
-            if (r == null) {
-                // 将空值存入redis，防止缓存穿透
-                redisTemplate.opsForValue().set(key, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+            R r = loadWithMutex(stats, key, lockKey + id, id, dbFallback, type, time, unit);
+            loading.complete(r);
+            return r;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingFutures.remove(key, loading);
+        }
+    }
+
+    /**
+     * 等待本节点正在进行的加载，超时后再查一次redis
+     */
+    private <R> R awaitLoading(String key, CompletableFuture<Object> inFlight, Class<R> type) {
+        try {
+            return type.cast(inFlight.get(SystemConstants.CACHE_LOAD_WAIT, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待缓存加载被中断: " + key, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("缓存加载失败: " + key, e.getCause());
+        } catch (TimeoutException e) {
+            Object cached = readValue(key, type);
+            if (cached == NULL_VALUE) {
                 return null;
             }
-            // 存在则存入redis
-            redisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(r), time, unit);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 释放互斥锁
-            unlock(newLocKey);
+            if (cached != null) {
+                return type.cast(cached);
+            }
+            throw new IllegalStateException("缓存加载超时: " + key);
+        }
+    }
+
+    /**
+     * 获取redis互斥锁后查询数据库重建缓存，锁被其他节点持有时按间隔轮询redis，直到缓存重建或超时
+     */
+    private <R, I> R loadWithMutex(CacheStats.PrefixStats stats, String key, String lockKey, I id, Function<I, R> dbFallback, Class<R> type, Long time, TimeUnit unit) {
+        long deadline = System.currentTimeMillis() + SystemConstants.CACHE_LOAD_WAIT;
+        long interval = SystemConstants.CACHE_LOAD_RETRY_INTERVAL;
+        while (true) {
+            if (tryLock(lockKey)) {
+                try {
+                    // 获取成功,再次查询redis缓存
+                    Object cached = readValue(key, type);
+                    if (cached != null) {
+                        return cached == NULL_VALUE ? null : type.cast(cached);
+                    }
+                    //redis不存在,查询数据库
+                    R r = load(stats, dbFallback, id);
+                    // 判断商户是否存在
+                    if (r == null) {
+                        // 将空值存入redis，防止缓存穿透
+                        writeValue(key, null, RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+                        return null;
+                    }
+                    // 存在则存入redis
+                    writeValue(key, r, time, unit);
+                    putLocal(key, r);
+                    return r;
+                } finally {
+                    // 释放互斥锁
+                    unlock(lockKey);
+                }
+            }
+            // 其他节点正在重建，退避后查看是否已经写入redis
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new IllegalStateException("缓存加载超时: " + key);
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(Math.min(interval, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待缓存加载被中断: " + key, e);
+            }
+            interval = Math.min(interval * 2, SystemConstants.CACHE_LOAD_RETRY_INTERVAL * 8);
+            Object cached = readValue(key, type);
+            if (cached != null) {
+                if (cached == NULL_VALUE) {
+                    return null;
+                }
+                R r = type.cast(cached);
+                putLocal(key, r);
+                return r;
+            }
         }
-        return r;
     }
 
 
@@ -110,26 +403,329 @@ public class CacheClient {
      */
     public <R, I> R queryWithPassThrough(String keyPrefix, I id, Class<R> type, Function<I, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
-        // 先查询缓存
-        String json = redisTemplate.opsForValue().get(key);
-        if (StrUtil.isNotBlank(json)) {
-            // 存在直接返回给前端
-            return JSONUtil.toBean(json, type);
+        CacheStats.PrefixStats stats = cacheStats.of(keyPrefix);
+        // 先查询一级缓存
+        R local = getLocal(key, type);
+        if (local != null) {
+            stats.localHits.increment();
+            return local;
         }
-        // 前面已经判断是否为空了，StrUtil.isNotBlank(shopJson)，这次不为null，说明是之前缓存的空值
-        if (json != null) {
+        // 布隆过滤器判断不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            stats.bloomRejects.increment();
             return null;
         }
+        // 再查询redis
+        Object cached = readValue(key, type);
+        if (cached == NULL_VALUE) {
+            // 之前缓存的空值
+            stats.nullHits.increment();
+            return null;
+        }
+        if (cached != null) {
+            // 存在直接返回给前端
+            stats.hits.increment();
+            R r = type.cast(cached);
+            putLocal(key, r);
+            return r;
+        }
+        stats.misses.increment();
         // redis不存在
-        R r = dbFallback.apply(id);
+        R r = load(stats, dbFallback, id);
         // 判断商户是否存在
         if (r == null) {
             // 等于null，将空值存入redis，防止缓存穿透
-            redisTemplate.opsForValue().set(key, "", time, unit);
+            writeValue(key, null, time, unit);
             return null;
         }
         // 不等于null，存入redis
         this.set(key, r, time, unit);
+        putLocal(key, r);
+        return r;
+    }
+
+    /**
+     * 批量查询，一次MGET查询redis，未命中的id一次批量查询数据库，再通过pipeline写回redis
+     * 返回的对象是新反序列化的，不经过一级缓存，调用方可以修改
+     *
+     * @param keyPrefix  缓存key前缀
+     * @param ids        id列表
+     * @param type       缓存对象类型
+     * @param dbFallback 按id列表批量查询数据库，返回 id -> 对象
+     * @return 按ids的顺序返回，不存在的id跳过
+     */
+    public <R, I> List<R> queryMany(String keyPrefix, List<I> ids, Class<R> type, Function<List<I>, Map<I, R>> dbFallback, Long time, TimeUnit unit) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        CacheStats.PrefixStats stats = cacheStats.of(keyPrefix);
+        // 布隆过滤器判断一定不存在的id不查询
+        List<I> candidates = ids.stream().filter(id -> mightExist(keyPrefix, id)).collect(Collectors.toList());
+        stats.bloomRejects.add(ids.size() - candidates.size());
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<I, R> found = new HashMap<>(candidates.size());
+        // 热点key直接使用本地固定对象的副本（调用方会修改列表中的对象），其余的批量查询redis
+        List<I> remote = new ArrayList<>(candidates.size());
+        for (I id : candidates) {
+            String key = keyPrefix + id;
+            hotKeys.record(key);
+            R hot = hotKeys.get(key, type);
+            if (hot != null) {
+                stats.localHits.increment();
+                found.put(id, BeanUtil.copyProperties(hot, type));
+            } else {
+                remote.add(id);
+            }
+        }
+        byte[][] keys = remote.stream().map(id -> rawKey(keyPrefix + id)).toArray(byte[][]::new);
+        List<byte[]> raws = keys.length == 0 ? Collections.emptyList()
+                : redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+        List<I> misses = new ArrayList<>();
+        for (int i = 0; i < remote.size(); i++) {
+            Object cached = decodeValue(raws == null ? null : raws.get(i), type);
+            if (cached == null) {
+                stats.misses.increment();
+                misses.add(remote.get(i));
+            } else if (cached != NULL_VALUE) {
+                stats.hits.increment();
+                R r = type.cast(cached);
+                hotKeys.pin(keyPrefix + remote.get(i), BeanUtil.copyProperties(r, type));
+                found.put(remote.get(i), r);
+            } else {
+                stats.nullHits.increment();
+            }
+            // NULL_VALUE说明之前缓存的空值
+        }
+        if (!misses.isEmpty()) {
+            Map<I, R> loaded = load(stats, dbFallback, misses);
+            found.putAll(loaded);
+            writeMany(keyPrefix, misses, loaded, time, unit);
+        }
+        List<R> result = new ArrayList<>(found.size());
+        for (I id : candidates) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * pipeline批量写回，数据库中也不存在的id写入空值
+     */
+    private <R, I> void writeMany(String keyPrefix, List<I> ids, Map<I, R> values, Long time, TimeUnit unit) {
+        Expiration nullExpiration = Expiration.from(RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+        Expiration expiration = Expiration.from(time, unit);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (I id : ids) {
+                R r = values.get(id);
+                connection.set(rawKey(keyPrefix + id), encodeValue(r), r == null ? nullExpiration : expiration,
+                        RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * hash模式查询，每个字段一个hash entry，只读取需要的字段
+     * 返回的对象只设置了读取的字段（从数据库加载时是完整对象），所以不经过一级缓存
+     * key前缀不能和字符串模式的缓存共用
+     *
+     * @param fields 要读取的字段，为空时读取所有字段
+     */
+    public <R, I> R queryHash(String keyPrefix, I id, Class<R> type, Function<I, R> dbFallback, Long time, TimeUnit unit, String... fields) {
+        List<R> result = queryHashMany(keyPrefix, Collections.singletonList(id), type, ids -> {
+            R r = dbFallback.apply(ids.get(0));
+            return r == null ? Collections.emptyMap() : Collections.singletonMap(ids.get(0), r);
+        }, time, unit, fields);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * hash模式批量查询，pipeline发送每个id的HMGET，未命中的id批量查询数据库后写回
+     *
+     * @param fields 要读取的字段，为空时读取所有字段
+     * @return 按ids的顺序返回，不存在的id跳过
+     */
+    @SuppressWarnings("unchecked")
+    public <R, I> List<R> queryHashMany(String keyPrefix, List<I> ids, Class<R> type, Function<List<I>, Map<I, R>> dbFallback,
+                                       Long time, TimeUnit unit, String... fields) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        CacheStats.PrefixStats stats = cacheStats.of(keyPrefix);
+        List<I> candidates = ids.stream().filter(id -> mightExist(keyPrefix, id)).collect(Collectors.toList());
+        stats.bloomRejects.add(ids.size() - candidates.size());
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] names = fields.length == 0 ? hashMapper.fieldNames(type) : fields;
+        byte[][] rawFields = hashMapper.rawFields(type, names);
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (I id : candidates) {
+                connection.hMGet(rawKey(keyPrefix + id), rawFields);
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+        Map<I, R> found = new HashMap<>(candidates.size());
+        List<I> misses = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            List<byte[]> values = (List<byte[]>) replies.get(i);
+            Boolean present = values == null ? null : HashCacheMapper.present(values.get(0));
+            if (present == null) {
+                stats.misses.increment();
+                misses.add(candidates.get(i));
+            } else if (present) {
+                stats.hits.increment();
+                found.put(candidates.get(i), hashMapper.fromHash(type, names, values));
+            } else {
+                // 之前缓存的空值
+                stats.nullHits.increment();
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<I, R> loaded = load(stats, dbFallback, misses);
+            found.putAll(loaded);
+            writeHashes(keyPrefix, misses, loaded, time, unit);
+        }
+        List<R> result = new ArrayList<>(found.size());
+        for (I id : candidates) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * pipeline写入完整的hash，先删除旧key，避免残留已经不存在的字段
+     */
+    private <R, I> void writeHashes(String keyPrefix, List<I> ids, Map<I, R> values, Long time, TimeUnit unit) {
+        long nullTtl = TimeUnit.MINUTES.toMillis(RedisConstants.CACHE_NULL_TTL);
+        long ttl = unit.toMillis(time);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (I id : ids) {
+                byte[] key = rawKey(keyPrefix + id);
+                R r = values.get(id);
+                connection.del(key);
+                connection.hMSet(key, hashMapper.toHash(r));
+                connection.pExpire(key, r == null ? nullTtl : ttl);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 提前刷新，解决大量key同时过期造成的缓存雪崩
+     * 1. 写入时过期时间增加随机抖动，批量预热的key不会在同一秒过期
+     * 2. 读取时按XFetch算法，根据上次加载耗时和剩余过期时间计算是否提前刷新：
+     *    now - 加载耗时 * beta * ln(random) >= 过期时间，越接近过期、加载越慢，越可能提前刷新
+     *    需要刷新时后台重建缓存，当前请求直接返回旧值，热点key在过期前就已经刷新
+     */
+    public <R, I> R queryWithEarlyRefresh(String keyPrefix, I id, Class<R> type, Function<I, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        CacheStats.PrefixStats stats = cacheStats.of(keyPrefix);
+        R local = getLocal(key, type);
+        if (local != null) {
+            stats.localHits.increment();
+            return local;
+        }
+        if (!mightExist(keyPrefix, id)) {
+            stats.bloomRejects.increment();
+            return null;
+        }
+        byte[] raw = readRaw(key);
+        Object cached = decodeValue(raw, type);
+        if (cached == NULL_VALUE) {
+            stats.nullHits.increment();
+            return null;
+        }
+        if (cached != null) {
+            stats.hits.increment();
+            R r = type.cast(cached);
+            if (raw[0] == EARLY_REFRESH_MAGIC && shouldRefreshEarly(raw)) {
+                refreshInBackground(stats, key, id, dbFallback, time, unit);
+            }
+            putLocal(key, r);
+            return r;
+        }
+        stats.misses.increment();
+        // 未命中，本节点同一个key只加载一次
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loadingFutures.putIfAbsent(key, loading);
+        if (inFlight != null) {
+            return awaitLoading(key, inFlight, type);
+        }
+        try {
+            R r = loadWithEarlyRefresh(stats, key, id, dbFallback, time, unit);
+            loading.complete(r);
+            putLocal(key, r);
+            return r;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingFutures.remove(key, loading);
+        }
+    }
+
+    private boolean shouldRefreshEarly(byte[] raw) {
+        if (raw.length < EARLY_REFRESH_HEADER) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.wrap(raw, 1, EARLY_REFRESH_HEADER - 1);
+        int delta = header.getInt();
+        long expireAt = header.getLong();
+        // ln(random) <= 0，越接近过期时间越容易满足
+        double random = 1 - ThreadLocalRandom.current().nextDouble();
+        return System.currentTimeMillis() - delta * SystemConstants.CACHE_EARLY_REFRESH_BETA * Math.log(random) >= expireAt;
+    }
+
+    /**
+     * 后台刷新，本节点由刷新调度合并重复的刷新，多个节点之间用redis互斥锁去重
+     */
+    private <R, I> void refreshInBackground(CacheStats.PrefixStats stats, String key, I id, Function<I, R> dbFallback, Long time, TimeUnit unit) {
+        String lockKey = RedisConstants.KEY_PREFIX + key;
+        refreshScheduler.submit(key, () -> {
+            if (!tryLock(lockKey)) {
+                return;
+            }
+            try {
+                loadWithEarlyRefresh(stats, key, id, dbFallback, time, unit);
+                removeLocal(key);
+            } finally {
+                unlock(lockKey);
+            }
+        });
+    }
+
+    /**
+     * 查询数据库并记录耗时，写入带数据头的缓存，过期时间增加随机抖动
+     */
+    private <R, I> R loadWithEarlyRefresh(CacheStats.PrefixStats stats, String key, I id, Function<I, R> dbFallback, Long time, TimeUnit unit) {
+        long begin = System.currentTimeMillis();
+        R r = load(stats, dbFallback, id);
+        long now = System.currentTimeMillis();
+        if (r == null) {
+            writeValue(key, null, RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return null;
+        }
+        long ttl = unit.toMillis(time);
+        ttl += (long) (ttl * SystemConstants.CACHE_TTL_JITTER * ThreadLocalRandom.current().nextDouble());
+        byte[] value = encodeValue(r);
+        byte[] raw = ByteBuffer.allocate(EARLY_REFRESH_HEADER + value.length)
+                .put(EARLY_REFRESH_MAGIC)
+                .putInt((int) Math.min(now - begin, Integer.MAX_VALUE))
+                .putLong(now + ttl)
+                .put(value)
+                .array();
+        long expireMillis = ttl;
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(rawKey(key), raw,
+                Expiration.milliseconds(expireMillis), RedisStringCommands.SetOption.upsert()));
         return r;
     }
 
@@ -141,12 +737,21 @@ public class CacheClient {
      */
     public <R, I> R queryWithLogicalExpire(String keyPrefix, I id, Class<R> type, String lockKey, Function<I, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        CacheStats.PrefixStats stats = cacheStats.of(keyPrefix);
+        if (!mightExist(keyPrefix, id)) {
+            stats.bloomRejects.increment();
+            return null;
+        }
+        // 每次读取都计入热度，过期后后台刷新按热度排队
+        hotKeys.record(key);
         // 先查询缓存
         String json = redisTemplate.opsForValue().get(key);
         if (StrUtil.isBlank(json)) {
             // 不存在
+            stats.misses.increment();
             return null;
         }
+        stats.hits.increment();
         // 命中 把json反序列化为对象
         RedisData redisData = JSONUtil.toBean(json, RedisData.class);
         // 店铺信息
@@ -158,29 +763,27 @@ public class CacheClient {
             // 未过期
             return r;
         }
-        // 已过期 重建缓存
+        // 已过期 返回旧值，交给刷新调度在后台重建缓存，获取锁也在后台进行
+        stats.staleServes.increment();
         final String newLockKey = lockKey + id;
-        boolean lock = tryLock(newLockKey);
-        // 判断是否获取锁成功
-        if (lock) {
-            // 双重缓存，如果该次查询redis存在，则无需重建缓存
-            String doubleShopJson = redisTemplate.opsForValue().get(key);
-            if (StrUtil.isNotBlank(doubleShopJson)) {
-                // 存在直接返回给前端
-                return JSONUtil.toBean(doubleShopJson, type);
-            }
-            // 获取成功 开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    R apply = dbFallback.apply(id);
-                    this.setWithLogicalExpire(key, apply, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    unlock(newLockKey);
+        refreshScheduler.submit(key, () -> {
+            if (!tryLock(newLockKey)) {
+                return;
+            }
+            try {
+                // 双重检查，其他节点可能已经重建过缓存
+                String doubleJson = redisTemplate.opsForValue().get(key);
+                if (StrUtil.isNotBlank(doubleJson)
+                        && JSONUtil.toBean(doubleJson, RedisData.class).getExpireTime().isAfter(LocalDateTime.now())) {
+                    return;
                 }
-            });
-        }
+                R apply = load(stats, dbFallback, id);
+                this.setWithLogicalExpire(key, apply, time, unit);
+                removeLocal(key);
+            } finally {
+                unlock(newLockKey);
+            }
+        });
         return r;
     }
 
@@ -0,0 +1,19 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的编解码
+ */
+public interface CacheCodec {
+
+    /**
+     * @return 是否可以编码该类型的对象
+     */
+    boolean supports(Class<?> type);
+
+    byte[] encode(Object value);
+
+    /**
+     * @return null说明数据不是该编码或者版本不兼容，调用方按未命中处理
+     */
+    <T> T decode(byte[] bytes, Class<T> type);
+}
@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据变更后删除缓存
+ * 1. 在事务中调用时，等事务提交后再删除，避免提交前其他请求读到旧数据重新写入缓存
+ * 2. 延迟双删：提交后立即删除一次，延迟一段时间再删除一次，覆盖删除期间并发读取写回的旧值
+ * 3. 删除失败放入本地队列按间隔翻倍重试，超过次数记录日志
+ * hash模式的缓存同样整个删除，不单独更新字段，否则会和读取时的回写交错，留下旧字段
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    private static final ScheduledExecutorService CACHE_EVICT_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    @Resource
+    private CacheClient cacheClient;
+
+    /**
+     * 删除缓存，当前有事务时在提交后删除，事务回滚则不删除
+     *
+     * @param key 缓存key
+     */
+    public void evictAfterCommit(String key) {
+        afterCommit(() -> runTwice(key, () -> cacheClient.evict(key)));
+    }
+
+    /**
+     * 当前有事务时在提交后执行，否则立即执行
+     */
+    public void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void runTwice(String key, Runnable action) {
+        runWithRetry(key, action, 0);
+        CACHE_EVICT_EXECUTOR.schedule(() -> runWithRetry(key, action, 0),
+                SystemConstants.CACHE_DOUBLE_DELETE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private void runWithRetry(String key, Runnable action, int retries) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            if (retries >= SystemConstants.CACHE_EVICT_MAX_RETRIES) {
+                log.error("缓存失效失败，已重试{}次: {}", retries, key, e);
+                return;
+            }
+            long delay = SystemConstants.CACHE_EVICT_RETRY_INTERVAL << retries;
+            log.warn("缓存失效失败，{}毫秒后重试: {}", delay, key, e);
+            CACHE_EVICT_EXECUTOR.schedule(() -> runWithRetry(key, action, retries + 1), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        CACHE_EVICT_EXECUTOR.shutdown();
+    }
+}
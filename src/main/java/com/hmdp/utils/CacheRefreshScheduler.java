@@ -0,0 +1,155 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存后台刷新调度
+ * 1. 同一个key排队或执行中时，重复的刷新请求直接合并
+ * 2. 队列有上限，满了丢弃新的刷新任务，调用方继续返回旧值，下次读取时再尝试刷新
+ * 3. 按key的访问热度排序，越热的key越先刷新
+ * 任务异常只记录日志和计数，不影响调用方
+ */
+@Slf4j
+@Component
+public class CacheRefreshScheduler {
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+    /**
+     * 线程池和许可跟随bean创建，bean销毁时关闭，不影响同一个进程中后创建的实例
+     */
+    private final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(
+            SystemConstants.CACHE_REFRESH_THREADS, SystemConstants.CACHE_REFRESH_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "cache-refresh-" + THREAD_INDEX.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 排队中的任务数量上限，PriorityBlockingQueue本身没有容量限制
+     * 提交前获取许可，任务开始执行时归还
+     */
+    private final Semaphore permits = new Semaphore(SystemConstants.CACHE_REFRESH_QUEUE);
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 排队或执行中的key
+     */
+    private final Map<String, Task> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    /**
+     * 任务排队耗时 毫秒
+     */
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+
+    /**
+     * 提交后台刷新
+     *
+     * @param key     缓存key，用于合并重复的刷新和计算热度
+     * @param refresh 刷新逻辑
+     * @return false说明已经有相同key的刷新，或者队列已满被丢弃
+     */
+    public boolean submit(String key, Runnable refresh) {
+        Task task = new Task(key, refresh, hotKeyDetector.estimate(key), sequence.incrementAndGet());
+        if (pending.putIfAbsent(key, task) != null) {
+            coalesced.increment();
+            return false;
+        }
+        if (!permits.tryAcquire()) {
+            pending.remove(key, task);
+            dropped.increment();
+            log.debug("缓存刷新队列已满，丢弃: {}", key);
+            return false;
+        }
+        try {
+            refreshExecutor.execute(task);
+        } catch (RuntimeException e) {
+            permits.release();
+            pending.remove(key, task);
+            dropped.increment();
+            log.warn("缓存刷新任务提交失败: {}", key, e);
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("queued", refreshExecutor.getQueue().size());
+        snapshot.put("active", refreshExecutor.getActiveCount());
+        snapshot.put("submitted", submitted.sum());
+        snapshot.put("coalesced", coalesced.sum());
+        snapshot.put("dropped", dropped.sum());
+        snapshot.put("completed", completed.sum());
+        snapshot.put("failed", failed.sum());
+        snapshot.put("queueLatencyMs", queueLatency.snapshot());
+        return snapshot;
+    }
+
+    @PreDestroy
+    private void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        private final String key;
+        private final Runnable refresh;
+        private final long hotness;
+        private final long sequence;
+        private final long submitTime = System.currentTimeMillis();
+
+        private Task(String key, Runnable refresh, long hotness, long sequence) {
+            this.key = key;
+            this.refresh = refresh;
+            this.hotness = hotness;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            // 离开队列，归还许可
+            permits.release();
+            queueLatency.record(System.currentTimeMillis() - submitTime);
+            try {
+                refresh.run();
+                completed.increment();
+            } catch (Exception e) {
+                failed.increment();
+                log.error("缓存刷新失败: {}", key, e);
+            } finally {
+                pending.remove(key, this);
+            }
+        }
+
+        /**
+         * 热度高的先执行，热度相同先提交的先执行
+         */
+        @Override
+        public int compareTo(Task other) {
+            int result = Long.compare(other.hotness, hotness);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
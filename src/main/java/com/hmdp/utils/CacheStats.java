@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按缓存key前缀统计命中率和数据库加载耗时
+ * 计数使用LongAdder，耗时使用无锁直方图，读路径上没有锁竞争
+ */
+@Component
+public class CacheStats {
+
+    private final Map<String, PrefixStats> stats = new ConcurrentHashMap<>();
+
+    public PrefixStats of(String keyPrefix) {
+        PrefixStats prefixStats = stats.get(keyPrefix);
+        return prefixStats != null ? prefixStats : stats.computeIfAbsent(keyPrefix, k -> new PrefixStats());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        stats.forEach((prefix, prefixStats) -> snapshot.put(prefix, prefixStats.snapshot()));
+        return snapshot;
+    }
+
+    public static final class PrefixStats {
+        /**
+         * 一级缓存命中
+         */
+        final LongAdder localHits = new LongAdder();
+        /**
+         * redis命中
+         */
+        final LongAdder hits = new LongAdder();
+        /**
+         * 命中缓存的空值
+         */
+        final LongAdder nullHits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        /**
+         * 布隆过滤器判断不存在
+         */
+        final LongAdder bloomRejects = new LongAdder();
+        /**
+         * 逻辑过期后返回的旧值
+         */
+        final LongAdder staleServes = new LongAdder();
+        /**
+         * 查询数据库重建缓存的次数
+         */
+        final LongAdder rebuilds = new LongAdder();
+        /**
+         * 查询数据库的耗时 微秒
+         */
+        final LatencyHistogram loadLatency = new LatencyHistogram();
+
+        void recordLoad(long nanos) {
+            rebuilds.increment();
+            loadLatency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+
+        private Map<String, Object> snapshot() {
+            long localHits = this.localHits.sum();
+            long hits = this.hits.sum();
+            long nullHits = this.nullHits.sum();
+            long misses = this.misses.sum();
+            long bloomRejects = this.bloomRejects.sum();
+            long total = localHits + hits + nullHits + misses + bloomRejects;
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("requests", total);
+            snapshot.put("hitRatio", total == 0 ? 0 : (double) (localHits + hits + nullHits + bloomRejects) / total);
+            snapshot.put("localHits", localHits);
+            snapshot.put("hits", hits);
+            snapshot.put("nullHits", nullHits);
+            snapshot.put("misses", misses);
+            snapshot.put("bloomRejects", bloomRejects);
+            snapshot.put("staleServes", staleServes.sum());
+            snapshot.put("rebuilds", rebuilds.sum());
+            snapshot.put("loadLatencyUs", loadLatency.snapshot());
+            return snapshot;
+        }
+    }
+}
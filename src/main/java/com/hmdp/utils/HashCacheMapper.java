@@ -0,0 +1,134 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.convert.Convert;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * hash模式下对象和hash entry之间的转换，每个非空字段一个entry，值为字符串，redis-cli中可以直接查看
+ * 标记字段 "_" 区分三种情况：值为1说明对象存在，空字符串说明缓存的空值，不存在说明未命中
+ */
+public class HashCacheMapper {
+
+    public static final String MARKER = "_";
+    private static final byte[] RAW_MARKER = MARKER.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PRESENT = "1".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Map<Class<?>, Map<String, Field>> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * @return 对象的所有字段名
+     */
+    public String[] fieldNames(Class<?> type) {
+        return schema(type).keySet().toArray(new String[0]);
+    }
+
+    /**
+     * @return 标记字段在前，后面依次是要读取的字段，用于HMGET
+     */
+    public byte[][] rawFields(Class<?> type, String[] fields) {
+        Map<String, Field> schema = schema(type);
+        byte[][] rawFields = new byte[fields.length + 1][];
+        rawFields[0] = RAW_MARKER;
+        for (int i = 0; i < fields.length; i++) {
+            if (!schema.containsKey(fields[i])) {
+                throw new IllegalArgumentException(type.getSimpleName() + "没有字段: " + fields[i]);
+            }
+            rawFields[i + 1] = fields[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return rawFields;
+    }
+
+    public Map<byte[], byte[]> toHash(Object value) {
+        Map<byte[], byte[]> hash = new LinkedHashMap<>();
+        if (value == null) {
+            hash.put(RAW_MARKER, EMPTY);
+            return hash;
+        }
+        hash.put(RAW_MARKER, PRESENT);
+        try {
+            for (Map.Entry<String, Field> entry : schema(value.getClass()).entrySet()) {
+                Object fieldValue = entry.getValue().get(value);
+                if (fieldValue != null) {
+                    hash.put(entry.getKey().getBytes(StandardCharsets.UTF_8), encode(fieldValue).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return hash;
+    }
+
+    /**
+     * 按HMGET的结果创建对象，只设置读取到的字段
+     *
+     * @param fields 读取的字段
+     * @param values HMGET的结果，第一个是标记字段
+     */
+    public <T> T fromHash(Class<T> type, String[] fields, List<byte[]> values) {
+        Map<String, Field> schema = schema(type);
+        try {
+            T result = type.getDeclaredConstructor().newInstance();
+            for (int i = 0; i < fields.length; i++) {
+                byte[] raw = values.get(i + 1);
+                if (raw != null) {
+                    Field field = schema.get(fields[i]);
+                    field.set(result, decode(field.getType(), new String(raw, StandardCharsets.UTF_8)));
+                }
+            }
+            return result;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return 缓存中是否存在对象，null说明未命中
+     */
+    public static Boolean present(byte[] marker) {
+        return marker == null ? null : marker.length > 0;
+    }
+
+    private Map<String, Field> schema(Class<?> type) {
+        return schemas.computeIfAbsent(type, c -> {
+            Map<String, Field> fields = new LinkedHashMap<>();
+            for (Class<?> t = c; t != null && t != Object.class; t = t.getSuperclass()) {
+                for (Field field : t.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        field.setAccessible(true);
+                        fields.putIfAbsent(field.getName(), field);
+                    }
+                }
+            }
+            return fields;
+        });
+    }
+
+    private static String encode(Object value) {
+        // LocalDateTime、LocalDate的toString是ISO格式，可以直接parse
+        return value.toString();
+    }
+
+    private static Object decode(Class<?> type, String value) {
+        if (type == String.class) {
+            return value;
+        }
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.parse(value);
+        }
+        if (type == LocalDate.class) {
+            return LocalDate.parse(value);
+        }
+        return Convert.convert(type, value);
+    }
+}
@@ -0,0 +1,178 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 热点key探测
+ * 按采样率把访问计入count-min sketch，每个窗口结束时取计数最高的top-K个key晋升为热点key，然后所有计数减半衰减
+ * 热点key的对象固定在本地短期缓存中，命中时不访问redis，避免读流量集中打到持有热点key的redis节点
+ * 计数是估算值（只会偏大），单位是采样后的次数
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    private static final ScheduledExecutorService HOT_KEY_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    private final int width = Integer.highestOneBit(SystemConstants.HOT_KEY_SKETCH_WIDTH);
+    private final AtomicLongArray sketch = new AtomicLongArray(DEPTH * width);
+    /**
+     * 本窗口内计数超过阈值的候选key
+     */
+    private final Map<String, Long> candidates = new ConcurrentHashMap<>();
+    /**
+     * 当前的热点key -> 晋升时的估算计数
+     */
+    private volatile Map<String, Long> hotKeys = Collections.emptyMap();
+    /**
+     * 热点key固定在本地的对象，过期时间很短，数据变更时通过失效消息删除
+     */
+    private final Cache<String, Object> pinned = CacheUtil.newTimedCache(TimeUnit.SECONDS.toMillis(SystemConstants.HOT_KEY_TTL));
+
+    @PostConstruct
+    private void init() {
+        HOT_KEY_EXECUTOR.scheduleWithFixedDelay(this::rotate,
+                SystemConstants.HOT_KEY_WINDOW, SystemConstants.HOT_KEY_WINDOW, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        HOT_KEY_EXECUTOR.shutdown();
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key 缓存key
+     */
+    public void record(String key) {
+        if (ThreadLocalRandom.current().nextInt(SystemConstants.HOT_KEY_SAMPLE) != 0) {
+            return;
+        }
+        long hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, sketch.incrementAndGet(i * width + index(hash, i)));
+        }
+        if (estimate >= SystemConstants.HOT_KEY_MIN_COUNT
+                && (candidates.size() < SystemConstants.HOT_KEY_CANDIDATES || candidates.containsKey(key))) {
+            candidates.put(key, estimate);
+        }
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * @return 热点key固定在本地的对象，不是热点key或者没有固定时返回null
+     */
+    public <R> R get(String key, Class<R> type) {
+        if (!isHot(key)) {
+            return null;
+        }
+        Object value = pinned.get(key, false);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    /**
+     * 如果是热点key，把对象固定在本地
+     */
+    public void pin(String key, Object value) {
+        if (value != null && isHot(key)) {
+            pinned.put(key, value);
+        }
+    }
+
+    public void invalidate(String key) {
+        pinned.remove(key);
+    }
+
+    /**
+     * @return 当前的热点key和晋升时的估算计数，按计数从高到低
+     */
+    public Map<String, Long> hotKeys() {
+        return hotKeys;
+    }
+
+    /**
+     * 窗口结束：按估算计数重新选出热点key，然后衰减
+     */
+    private void rotate() {
+        try {
+            List<Map.Entry<String, Long>> ranked = new ArrayList<>(candidates.size());
+            candidates.forEach((key, count) -> ranked.add(new AbstractMap.SimpleEntry<>(key, estimate(key))));
+            ranked.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+            Map<String, Long> top = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> entry : ranked) {
+                if (top.size() >= SystemConstants.HOT_KEY_TOP_K || entry.getValue() < SystemConstants.HOT_KEY_MIN_COUNT) {
+                    break;
+                }
+                top.put(entry.getKey(), entry.getValue());
+            }
+            Map<String, Long> previous = hotKeys;
+            hotKeys = Collections.unmodifiableMap(top);
+            // 不再热的key从本地删除，回到正常的缓存路径
+            previous.keySet().stream().filter(key -> !top.containsKey(key)).forEach(pinned::remove);
+            if (!top.keySet().equals(previous.keySet())) {
+                log.info("热点key变化: {}", top);
+            }
+            decay();
+            // 衰减后仍达到阈值的key保留为候选，下个窗口继续比较
+            candidates.keySet().removeIf(key -> estimate(key) < SystemConstants.HOT_KEY_MIN_COUNT);
+        } catch (Exception e) {
+            log.error("热点key统计异常", e);
+        }
+    }
+
+    private void decay() {
+        for (int i = 0; i < sketch.length(); i++) {
+            long count;
+            do {
+                count = sketch.get(i);
+            } while (count != 0 && !sketch.compareAndSet(i, count, count >>> 1));
+        }
+    }
+
+    /**
+     * @return key在当前窗口的估算采样访问次数
+     */
+    public long estimate(String key) {
+        long hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, sketch.get(i * width + index(hash, i)));
+        }
+        return estimate;
+    }
+
+    private int index(long hash, int row) {
+        // SplitMix64的混合函数，每行使用不同的种子
+        long h = hash ^ SEEDS[row];
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h ^= h >>> 31;
+        return (int) (h & (width - 1));
+    }
+}
@@ -0,0 +1,15 @@
+package com.hmdp.utils;
+
+/**
+ * 全局唯一id生成器
+ */
+public interface IDWorker {
+
+    /**
+     * 生成下一个id
+     *
+     * @param keyPrefix 业务前缀
+     * @return id
+     */
+    long nextId(String keyPrefix);
+}
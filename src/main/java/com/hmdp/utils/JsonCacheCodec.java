@@ -0,0 +1,40 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * JSON编码，和之前通过RedisTemplate写入的格式完全一致，新旧版本节点可以互相读取
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    private final RedisSerializer<Object> valueSerializer;
+
+    /**
+     * @param valueSerializer RedisTemplate的value序列化器，之前的缓存都是先转成JSON字符串再经过它写入的
+     */
+    public JsonCacheCodec(RedisSerializer<Object> valueSerializer) {
+        this.valueSerializer = valueSerializer;
+    }
+
+    @Override
+    public boolean supports(Class<?> type) {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        String json = value instanceof String ? (String) value : JSONUtil.toJsonStr(value);
+        return valueSerializer.serialize(json);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        Object json = valueSerializer.deserialize(bytes);
+        if (json == null || StrUtil.isBlank(json.toString())) {
+            return null;
+        }
+        return JSONUtil.toBean(json.toString(), type);
+    }
+}
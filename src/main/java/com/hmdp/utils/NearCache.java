@@ -0,0 +1,161 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.core.util.StrUtil;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.support.caching.CacheAccessor;
+import io.lettuce.core.support.caching.CacheFrontend;
+import io.lettuce.core.support.caching.ClientSideCaching;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于redis客户端缓存（CLIENT TRACKING，需要redis6以上）的近端缓存，保存缓存key的原始字节
+ * 使用单独的RESP3连接读取，redis记录这个连接读过的key，key被修改或删除时主动推送失效消息，本地随之删除
+ * 不需要自己发布失效消息；连接断开期间的失效消息会丢失，所以断开和重连时清空本地，另外还有过期时间兜底
+ */
+@Slf4j
+@Component
+public class NearCache {
+
+    private static final TrackingArgs TRACKING_ARGS = TrackingArgs.Builder.enabled();
+
+    @Value("${spring.redis.host}")
+    private String host;
+    @Value("${spring.redis.port}")
+    private int port;
+    @Value("${spring.redis.password:}")
+    private String password;
+
+    private final Cache<String, byte[]> local = CacheUtil.newLRUCache(SystemConstants.CACHE_NEAR_CAPACITY,
+            TimeUnit.SECONDS.toMillis(SystemConstants.CACHE_NEAR_TTL));
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private RedisClient client;
+    private StatefulRedisConnection<String, byte[]> connection;
+    private volatile CacheFrontend<String, byte[]> frontend;
+
+    @PostConstruct
+    private void init() {
+        if (!SystemConstants.CACHE_NEAR_ENABLED) {
+            return;
+        }
+        try {
+            RedisURI uri = RedisURI.create(host, port);
+            if (StrUtil.isNotBlank(password)) {
+                uri.setPassword(password.toCharArray());
+            }
+            client = RedisClient.create(uri);
+            client.addListener(new RedisConnectionStateListener() {
+                @Override
+                public void onRedisConnected(RedisChannelHandler<?, ?> handler) {
+                    // 重连后服务端的跟踪状态已经丢失，清空本地并重新开启
+                    local.clear();
+                    if (connection != null) {
+                        connection.async().clientTracking(TRACKING_ARGS);
+                    }
+                }
+
+                @Override
+                public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+                    local.clear();
+                }
+
+                @Override
+                public void onRedisExceptionCaught(RedisChannelHandler<?, ?> handler, Throwable cause) {
+                }
+            });
+            connection = client.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+            CacheFrontend<String, byte[]> frontend = ClientSideCaching.enable(new LocalAccessor(), connection, TRACKING_ARGS);
+            ((ClientSideCaching<String, byte[]>) frontend).addInvalidationListener(key -> invalidations.increment());
+            this.frontend = frontend;
+            log.info("近端缓存已开启");
+        } catch (Exception e) {
+            // redis版本不支持RESP3或客户端跟踪时退回直接读取redis
+            log.error("近端缓存开启失败，直接读取redis", e);
+            destroy();
+        }
+    }
+
+    public boolean isEnabled() {
+        return frontend != null;
+    }
+
+    /**
+     * 读取缓存key的原始字节，本地没有时从redis读取并开始跟踪该key
+     *
+     * @return key不存在时返回null
+     */
+    public byte[] get(String key) {
+        return frontend.get(key);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", isEnabled());
+        snapshot.put("size", local.size());
+        snapshot.put("hits", hits.sum());
+        snapshot.put("misses", misses.sum());
+        snapshot.put("invalidations", invalidations.sum());
+        return snapshot;
+    }
+
+    @PreDestroy
+    private void destroy() {
+        CacheFrontend<String, byte[]> frontend = this.frontend;
+        this.frontend = null;
+        if (frontend != null) {
+            frontend.close();
+        } else if (connection != null) {
+            connection.close();
+        }
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * 本地存储，容量和过期时间有上限
+     */
+    private final class LocalAccessor implements CacheAccessor<String, byte[]> {
+        @Override
+        public byte[] get(String key) {
+            byte[] value = local.get(key, false);
+            if (value == null) {
+                misses.increment();
+            } else {
+                hits.increment();
+            }
+            return value;
+        }
+
+        @Override
+        public void put(String key, byte[] value) {
+            local.put(key, value);
+        }
+
+        @Override
+        public void evict(String key) {
+            local.remove(key);
+        }
+    }
+}
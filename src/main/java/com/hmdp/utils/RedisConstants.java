@@ -10,20 +10,39 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_SHOP_HASH_KEY = "cache:shop:hash:";
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_VOUCHER_KEY = "seckill:voucher:";
+    public static final String SECKILL_LEASE_NODE_KEY = "seckill:lease:node:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_CHANNEL = "shop:geo:update";
     public static final String USER_SIGN_KEY = "sign:";
     public static final String ICR_KEY = "icr:";
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final Long ID_WORKER_TTL = 60L;
     public static final String KEY_PREFIX = "lock:";
     public static final String ORDER_PREFIX = "lock:order:";
     public static final String ORDER = "order:";
+    public static final String ORDER_STATUS_KEY = "order:status:";
+    public static final Long ORDER_STATUS_TTL = 600L;
     public static final String STREAM_ORDERS = "stream.orders";
+    public static final String STREAM_ORDERS_GROUP = "g1";
+    public static final String STREAM_ORDERS_DLQ = "stream.orders.dlq";
     public static final String FOLLOWS = "follows:";
 
 }
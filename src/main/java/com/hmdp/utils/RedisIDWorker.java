@@ -1,5 +1,6 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
@@ -8,23 +9,154 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Component
-public class RedisIDWorker {
+public class RedisIDWorker implements IDWorker {
 
     @Resource
     private RedisTemplate<String,String> redisTemplate;
     private static final Long BEGIN_TIMESTAMP = 1640995200L;
     private static final Integer COUNT_BITS = 32;
+    /**
+     * 每次通过INCRBY从redis预留的序列号数量
+     */
+    private static final int SEGMENT_SIZE = 1000;
+    /**
+     * 号段用掉20%时异步预取下一个号段
+     */
+    private static final int PREFETCH_OFFSET = SEGMENT_SIZE / 5;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+    private static final ExecutorService SEGMENT_PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor();
 
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private volatile DateKey dateKey = new DateKey(LocalDate.now());
+
+    @Override
     public long nextId(String keyPrefix){
         LocalDateTime now = LocalDateTime.now();
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
         long timeStamp = nowSecond - BEGIN_TIMESTAMP;
         // 获取当前日期
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 自增长
-        Long count = redisTemplate.opsForValue().increment(RedisConstants.ICR_KEY + keyPrefix + ":" + date);
+        String date = currentDate(now.toLocalDate());
+        // 从本地号段中获取序列号
+        long count = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new).next(date);
         return timeStamp << COUNT_BITS | count;
     }
+
+    /**
+     * 日期字符串每天只格式化一次
+     */
+    private String currentDate(LocalDate today) {
+        DateKey key = dateKey;
+        if (!key.date.equals(today)) {
+            key = new DateKey(today);
+            dateKey = key;
+        }
+        return key.text;
+    }
+
+    private static final class DateKey {
+        private final LocalDate date;
+        private final String text;
+
+        private DateKey(LocalDate date) {
+            this.date = date;
+            this.text = date.format(DATE_FORMATTER);
+        }
+    }
+
+    /**
+     * 号段 [cursor, max]，只属于某一天
+     */
+    private static final class Segment {
+        private final String date;
+        private final AtomicLong cursor;
+        private final long max;
+        private final long prefetchAt;
+
+        private Segment(String date, long start, long max) {
+            this.date = date;
+            this.cursor = new AtomicLong(start);
+            this.max = max;
+            this.prefetchAt = start + PREFETCH_OFFSET;
+        }
+    }
+
+    /**
+     * 每个业务前缀一个号段缓冲，当前号段用完时切换到预取好的号段
+     */
+    private final class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private Segment prepared;
+        private final AtomicBoolean prefetching = new AtomicBoolean();
+
+        private SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        private long next(String date) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.date.equals(date)) {
+                    // 无锁分配
+                    long value = segment.cursor.getAndIncrement();
+                    if (value <= segment.max) {
+                        if (value == segment.prefetchAt) {
+                            prefetch(date);
+                        }
+                        return value;
+                    }
+                }
+                // 号段用完或者日期变化
+                switchSegment(segment, date);
+            }
+        }
+
+        private synchronized void switchSegment(Segment exhausted, String date) {
+            if (current != exhausted) {
+                // 其他线程已经切换过了
+                return;
+            }
+            Segment next = prepared;
+            prepared = null;
+            current = next != null && next.date.equals(date) ? next : allocate(date);
+        }
+
+        private void prefetch(String date) {
+            if (!prefetching.compareAndSet(false, true)) {
+                return;
+            }
+            SEGMENT_PREFETCH_EXECUTOR.execute(() -> {
+                try {
+                    Segment segment = allocate(date);
+                    synchronized (this) {
+                        if (prepared == null) {
+                            prepared = segment;
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("预取号段失败 {}", keyPrefix, e);
+                } finally {
+                    prefetching.set(false);
+                }
+            });
+        }
+
+        private Segment allocate(String date) {
+            // 自增长 一次预留SEGMENT_SIZE个序列号
+            Long max = redisTemplate.opsForValue().increment(RedisConstants.ICR_KEY + keyPrefix + ":" + date, SEGMENT_SIZE);
+            if (max == null) {
+                throw new IllegalStateException("获取号段失败");
+            }
+            return new Segment(date, max - SEGMENT_SIZE + 1, max);
+        }
+    }
 }
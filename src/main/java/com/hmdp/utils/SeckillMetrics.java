@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 秒杀下单链路监控
+ * 消息队列积压（stream长度、消费者组延迟、pendingList）在查询时从redis读取
+ * 批处理耗时和下单到落库的端到端延迟由消费者记录，端到端延迟以stream消息id中的毫秒时间戳为起点
+ */
+@Slf4j
+@Component
+public class SeckillMetrics {
+
+    @Resource
+    private RedisTemplate<String, String> redisTemplate;
+
+    private final LatencyHistogram batchTime = new LatencyHistogram();
+    private final LatencyHistogram persistLatency = new LatencyHistogram();
+    private final LongAdder consumedOrders = new LongAdder();
+    private final LongAdder persistedOrders = new LongAdder();
+
+    /**
+     * 记录一批消息的处理耗时
+     *
+     * @param costMillis 耗时 毫秒
+     * @param size       消息数量
+     */
+    public void recordBatch(long costMillis, int size) {
+        batchTime.record(costMillis);
+        consumedOrders.add(size);
+    }
+
+    /**
+     * 记录一个订单从进入消息队列到保存成功的耗时
+     *
+     * @param recordId stream消息id
+     */
+    public void recordPersisted(RecordId recordId) {
+        persistLatency.record(System.currentTimeMillis() - recordId.getTimestamp());
+        persistedOrders.increment();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        try {
+            metrics.put("stream", streamMetrics());
+        } catch (Exception e) {
+            log.error("查询stream.orders信息失败", e);
+            metrics.put("stream", null);
+        }
+        metrics.put("consumedOrders", consumedOrders.sum());
+        metrics.put("persistedOrders", persistedOrders.sum());
+        metrics.put("batchTimeMs", batchTime.snapshot());
+        metrics.put("persistLatencyMs", persistLatency.snapshot());
+        return metrics;
+    }
+
+    private Map<String, Object> streamMetrics() {
+        Map<String, Object> stream = new LinkedHashMap<>();
+        StreamInfo.XInfoStream info = redisTemplate.opsForStream().info(RedisConstants.STREAM_ORDERS);
+        stream.put("length", info.streamLength());
+        redisTemplate.opsForStream().groups(RedisConstants.STREAM_ORDERS).forEach(group -> {
+            if (!RedisConstants.STREAM_ORDERS_GROUP.equals(group.groupName())) {
+                return;
+            }
+            stream.put("pending", group.pendingCount());
+            stream.put("consumers", group.consumerCount());
+            // redis7以上XINFO GROUPS直接返回未投递的消息数
+            stream.put("lag", toLong(group.getRaw().get("lag")));
+            stream.put("lagMs", lagMs(info, group.lastDeliveredId()));
+        });
+        return stream;
+    }
+
+    /**
+     * 最新消息和最后投递消息之间的时间差
+     * 还没有投递过消息时最后投递的id是0-0，按最早的一条消息计算，stream为空时没有积压
+     */
+    private static long lagMs(StreamInfo.XInfoStream info, String lastDeliveredId) {
+        if (info.streamLength() == 0) {
+            return 0;
+        }
+        long latest = RecordId.of(info.lastGeneratedId()).getTimestamp();
+        long delivered = lastDeliveredId == null ? 0 : RecordId.of(lastDeliveredId).getTimestamp();
+        if (delivered == 0) {
+            delivered = RecordId.of(info.firstEntryId()).getTimestamp();
+        }
+        return Math.max(latest - delivered, 0);
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof byte[]) {
+            return Long.valueOf(new String((byte[]) value));
+        }
+        return value == null ? null : Long.valueOf(value.toString());
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地已售罄优惠券登记表
+ * 优惠券售罄后，之后的秒杀请求在本地直接拒绝，不再访问redis
+ * 售罄和重置通过redis发布订阅同步到所有节点
+ */
+@Component
+@Slf4j
+public class SeckillSoldOutRegistry implements MessageListener {
+
+    private static final String SOLD_OUT = "soldout:";
+    private static final String RESET = "reset:";
+
+    private final Set<Long> soldOutVouchers = ConcurrentHashMap.newKeySet();
+
+    @Resource
+    private RedisTemplate<String, String> redisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    public boolean isSoldOut(Long voucherId) {
+        return soldOutVouchers.contains(voucherId);
+    }
+
+    /**
+     * 标记售罄并通知其他节点
+     *
+     * @param voucherId 优惠券id
+     */
+    public void markSoldOut(Long voucherId) {
+        // 已经标记过说明已经广播过
+        if (soldOutVouchers.add(voucherId)) {
+            redisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, SOLD_OUT + voucherId);
+        }
+    }
+
+    /**
+     * 补充库存后重置售罄标记并通知其他节点
+     *
+     * @param voucherId 优惠券id
+     */
+    public void reset(Long voucherId) {
+        soldOutVouchers.remove(voucherId);
+        redisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, RESET + voucherId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = String.valueOf(redisTemplate.getValueSerializer().deserialize(message.getBody()));
+        try {
+            if (body.startsWith(SOLD_OUT)) {
+                soldOutVouchers.add(Long.valueOf(body.substring(SOLD_OUT.length())));
+            } else if (body.startsWith(RESET)) {
+                soldOutVouchers.remove(Long.valueOf(body.substring(RESET.length())));
+            }
+        } catch (NumberFormatException e) {
+            log.error("无法解析售罄消息: {}", body);
+        }
+    }
+}
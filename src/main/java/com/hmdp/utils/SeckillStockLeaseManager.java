@@ -0,0 +1,213 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀库存租用
+ * 每个节点从redis库存中一次租用一批库存到本地，秒杀时在本地扣减，不再每次访问库存key
+ * 租用的库存在redis中已经扣除，本地扣减是原子的，所以不会超卖
+ * 各节点租用但还没有下单的库存按节点记录在 seckill:leased:{voucherId} 哈希中，下单成功或归还时扣减
+ * 长时间没有请求（秒杀结束）或者节点关闭时，未用完的库存归还redis
+ * 节点持有租约期间定时刷新心跳 seckill:lease:node:{nodeId}，宕机的节点心跳过期后，
+ * 其他节点租不到库存时会回收它没用完的库存，避免这部分库存永远算作已租出
+ */
+@Slf4j
+@Component
+public class SeckillStockLeaseManager {
+
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+    private static final DefaultRedisScript<Long> RETURN_SCRIPT;
+
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("seckill_lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+        RETURN_SCRIPT = new DefaultRedisScript<>();
+        RETURN_SCRIPT.setLocation(new ClassPathResource("seckill_lease_return.lua"));
+        RETURN_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final ScheduledExecutorService LEASE_RETURN_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * 脚本参数以普通字符串传入，和lua脚本中拼接的key一致
+     */
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private SeckillSoldOutRegistry soldOutRegistry;
+
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 当前节点的id，租约按节点记录
+     */
+    @Getter
+    private final String nodeId = UUID.randomUUID().toString(true);
+
+    @PostConstruct
+    private void init() {
+        LEASE_RETURN_EXECUTOR.scheduleWithFixedDelay(this::returnIdleLeases,
+                SystemConstants.SECKILL_STOCK_LEASE_IDLE, SystemConstants.SECKILL_STOCK_LEASE_IDLE, TimeUnit.SECONDS);
+        long heartbeatPeriod = Math.max(1L, SystemConstants.SECKILL_STOCK_LEASE_HEARTBEAT_TTL / 3);
+        LEASE_RETURN_EXECUTOR.scheduleWithFixedDelay(this::heartbeat, heartbeatPeriod, heartbeatPeriod, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 扣减一个本地库存，本地库存用完时向redis续租
+     * 只有redis库存和所有节点的租约都用完时才标记售罄，其他节点还有租用的库存时只拒绝本次请求
+     * redis库存用完时，会先回收心跳已过期节点没用完的库存再租用
+     *
+     * @param voucherId 优惠券id
+     * @return 0扣减成功 1库存不足 3秒杀尚未开始 4秒杀已经结束 5优惠券已下架，和seckill.lua的返回值一致
+     */
+    public int tryAcquire(Long voucherId) {
+        Lease lease = leases.computeIfAbsent(voucherId, id -> new Lease());
+        lease.lastAccess = System.currentTimeMillis();
+        while (true) {
+            int stock = lease.stock.get();
+            if (stock > 0) {
+                if (lease.stock.compareAndSet(stock, stock - 1)) {
+                    return 0;
+                }
+                continue;
+            }
+            // 本地库存用完，已售罄时不再访问redis
+            if (soldOutRegistry.isSoldOut(voucherId)) {
+                return 1;
+            }
+            // 同一个优惠券只让一个线程去续租
+            synchronized (lease) {
+                if (lease.stock.get() > 0) {
+                    continue;
+                }
+                Long result = stringRedisTemplate.execute(LEASE_SCRIPT, Collections.emptyList(),
+                        voucherId.toString(), String.valueOf(SystemConstants.SECKILL_STOCK_LEASE_CHUNK),
+                        nodeId, String.valueOf(SystemConstants.SECKILL_STOCK_LEASE_HEARTBEAT_TTL));
+                int granted = Objects.requireNonNull(result).intValue();
+                if (granted > 0) {
+                    // 自己先用掉一个
+                    lease.stock.addAndGet(granted - 1);
+                    return 0;
+                }
+                if (granted == 0) {
+                    // 其他节点还有租用的库存，可能会归还，不能标记售罄
+                    return 1;
+                }
+                if (granted == -1) {
+                    // redis库存和所有租约都用完了，标记售罄并通知其他节点
+                    soldOutRegistry.markSoldOut(voucherId);
+                    return 1;
+                }
+                return -granted;
+            }
+        }
+    }
+
+    /**
+     * 扣减了本地库存但没有下单成功（重复下单），把库存还给本地
+     *
+     * @param voucherId 优惠券id
+     */
+    public void release(Long voucherId) {
+        Lease lease = leases.get(voucherId);
+        if (lease != null) {
+            lease.stock.incrementAndGet();
+        }
+    }
+
+    /**
+     * 本节点的租约已被其他节点回收，本地剩余的库存作废
+     *
+     * @param voucherId 优惠券id
+     */
+    public void invalidate(Long voucherId) {
+        Lease lease = leases.get(voucherId);
+        if (lease != null) {
+            int stock = lease.stock.getAndSet(0);
+            log.warn("优惠券{}的租约已被回收，作废本地库存{}", voucherId, stock);
+        }
+    }
+
+    /**
+     * 把本地未用完的库存归还redis
+     *
+     * @param voucherId 优惠券id
+     */
+    public void returnLease(Long voucherId) {
+        Lease lease = leases.get(voucherId);
+        if (lease == null) {
+            return;
+        }
+        int stock = lease.stock.getAndSet(0);
+        if (stock <= 0) {
+            return;
+        }
+        try {
+            // 已被其他节点回收的部分不会重复归还
+            Long returned = stringRedisTemplate.execute(RETURN_SCRIPT, Collections.emptyList(),
+                    voucherId.toString(), String.valueOf(stock), nodeId);
+            // 其他节点可能已经因为租不到库存标记了售罄
+            soldOutRegistry.reset(voucherId);
+            log.debug("优惠券{}归还库存{}", voucherId, returned);
+        } catch (Exception e) {
+            // 归还失败放回本地，下次再归还
+            lease.stock.addAndGet(stock);
+            log.error("优惠券{}归还库存失败", voucherId, e);
+        }
+    }
+
+    private void returnIdleLeases() {
+        long idleBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(SystemConstants.SECKILL_STOCK_LEASE_IDLE);
+        leases.forEach((voucherId, lease) -> {
+            if (lease.lastAccess < idleBefore) {
+                returnLease(voucherId);
+            }
+        });
+    }
+
+    /**
+     * 本地还有租用的库存时刷新心跳，防止租约被其他节点当成宕机回收
+     */
+    private void heartbeat() {
+        boolean holding = leases.values().stream().anyMatch(lease -> lease.stock.get() > 0);
+        if (!holding) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_LEASE_NODE_KEY + nodeId, "1",
+                    SystemConstants.SECKILL_STOCK_LEASE_HEARTBEAT_TTL, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("刷新库存租约心跳失败", e);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        LEASE_RETURN_EXECUTOR.shutdown();
+        leases.keySet().forEach(this::returnLease);
+    }
+
+    private static final class Lease {
+        private final AtomicInteger stock = new AtomicInteger();
+        private volatile long lastAccess;
+    }
+}
@@ -0,0 +1,357 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内的店铺地理位置索引，每个店铺类型一个网格，附近店铺查询不再访问redis的GEO和数据库
+ * 网格按经纬度划分为固定大小的格子，坐标保存在基本类型数组中，同一个格子的店铺在数组中连续
+ * 查询时从所在格子开始一圈一圈向外扫描，找够数量并且外圈不可能更近时停止
+ * 店铺新增或修改后通知所有节点从数据库重新加载该店铺，另外定时全量重建兜底
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex implements MessageListener {
+
+    private static final ScheduledExecutorService SHOP_GEO_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+    /**
+     * 和redis GEO使用相同的地球半径，距离结果一致
+     */
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS;
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private RedisTemplate<String, String> redisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 店铺id -> 所属类型和坐标，用于修改后重建对应类型的网格
+     */
+    private final Map<Long, Point> points = new ConcurrentHashMap<>();
+    /**
+     * 店铺类型 -> 网格，网格创建后不再修改，更新时整体替换
+     */
+    private volatile Map<Long, Grid> grids = Collections.emptyMap();
+    private volatile boolean loaded;
+    /**
+     * 全量重建加载期间单独刷新过的店铺，加载完成后覆盖到加载的数据上，值为null说明店铺已删除或没有坐标
+     * 不在重建时为null，通过this同步
+     */
+    private Map<Long, Point> refreshedDuringRebuild;
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.SHOP_GEO_CHANNEL));
+        rebuild();
+        SHOP_GEO_EXECUTOR.scheduleWithFixedDelay(this::rebuild,
+                SystemConstants.SHOP_GEO_REBUILD_INTERVAL, SystemConstants.SHOP_GEO_REBUILD_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        SHOP_GEO_EXECUTOR.shutdown();
+    }
+
+    /**
+     * @return 是否已经加载完成，未加载时调用方使用redis GEO查询
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 查询距离坐标最近的店铺
+     *
+     * @param typeId 店铺类型
+     * @param x      经度
+     * @param y      纬度
+     * @param radius 最大距离 米
+     * @param limit  最多返回的数量
+     * @return 店铺id -> 距离（米），按距离从近到远
+     */
+    public Map<Long, Double> search(long typeId, double x, double y, double radius, int limit) {
+        Grid grid = grids.get(typeId);
+        if (grid == null || limit <= 0) {
+            return Collections.emptyMap();
+        }
+        return grid.search(x, y, radius, limit);
+    }
+
+    /**
+     * 查询距离坐标最近的k个店铺，不限距离
+     */
+    public Map<Long, Double> nearest(long typeId, double x, double y, int k) {
+        return search(typeId, x, y, Double.MAX_VALUE, k);
+    }
+
+    /**
+     * 店铺新增或修改后调用，通知所有节点从数据库重新加载该店铺
+     *
+     * @param shopId 店铺id
+     */
+    public void refresh(Long shopId) {
+        if (shopId == null) {
+            return;
+        }
+        refreshLocal(shopId);
+        redisTemplate.convertAndSend(RedisConstants.SHOP_GEO_CHANNEL, shopId.toString());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = String.valueOf(redisTemplate.getValueSerializer().deserialize(message.getBody()));
+        try {
+            refreshLocal(Long.valueOf(body));
+        } catch (RuntimeException e) {
+            log.error("店铺位置更新失败: {}", body, e);
+        }
+    }
+
+    private void refreshLocal(Long shopId) {
+        Shop shop = shopMapper.selectById(shopId);
+        Point point = shop == null || shop.getTypeId() == null || shop.getX() == null || shop.getY() == null
+                ? null : new Point(shop.getTypeId(), shop.getX(), shop.getY());
+        synchronized (this) {
+            if (refreshedDuringRebuild != null) {
+                // 重建加载的数据可能早于这次修改，加载完成后再覆盖一次
+                refreshedDuringRebuild.put(shopId, point);
+            }
+            Point old = point == null ? points.remove(shopId) : points.put(shopId, point);
+            Map<Long, Grid> grids = new HashMap<>(this.grids);
+            if (point != null) {
+                grids.put(point.typeId, buildGrid(point.typeId));
+            }
+            // 修改了类型或者删除了店铺，原类型的网格也要重建
+            if (old != null && (point == null || old.typeId != point.typeId)) {
+                grids.put(old.typeId, buildGrid(old.typeId));
+            }
+            this.grids = grids;
+        }
+    }
+
+    /**
+     * 按主键游标分批加载所有店铺的坐标，重建所有网格
+     */
+    private void rebuild() {
+        synchronized (this) {
+            refreshedDuringRebuild = new HashMap<>();
+        }
+        try {
+            Map<Long, Point> loading = new HashMap<>();
+            long last = Long.MIN_VALUE;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new LambdaQueryWrapper<Shop>()
+                        .select(Shop::getId, Shop::getTypeId, Shop::getX, Shop::getY)
+                        .gt(Shop::getId, last).orderByAsc(Shop::getId)
+                        .last("LIMIT " + SystemConstants.SHOP_GEO_LOAD_BATCH));
+                for (Shop shop : shops) {
+                    last = shop.getId();
+                    if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                        loading.put(shop.getId(), new Point(shop.getTypeId(), shop.getX(), shop.getY()));
+                    }
+                }
+                if (shops.size() < SystemConstants.SHOP_GEO_LOAD_BATCH) {
+                    break;
+                }
+            }
+            synchronized (this) {
+                refreshedDuringRebuild.forEach((id, point) -> {
+                    if (point == null) {
+                        loading.remove(id);
+                    } else {
+                        loading.put(id, point);
+                    }
+                });
+                points.clear();
+                points.putAll(loading);
+                Map<Long, Grid> grids = new HashMap<>();
+                loading.values().stream().map(point -> point.typeId).distinct()
+                        .forEach(typeId -> grids.put(typeId, buildGrid(typeId)));
+                this.grids = grids;
+            }
+            loaded = true;
+            log.info("店铺位置索引加载{}个店铺，{}个类型", loading.size(), grids.size());
+        } catch (Exception e) {
+            // 保留旧的索引
+            log.error("店铺位置索引重建失败", e);
+        } finally {
+            synchronized (this) {
+                refreshedDuringRebuild = null;
+            }
+        }
+    }
+
+    private Grid buildGrid(long typeId) {
+        List<Map.Entry<Long, Point>> entries = new ArrayList<>();
+        points.forEach((id, point) -> {
+            if (point.typeId == typeId) {
+                entries.add(new AbstractMap.SimpleEntry<>(id, point));
+            }
+        });
+        return new Grid(entries, SystemConstants.SHOP_GEO_CELL);
+    }
+
+    static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    static final class Point {
+        final long typeId;
+        final double x;
+        final double y;
+
+        Point(long typeId, double x, double y) {
+            this.typeId = typeId;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * 一个店铺类型的网格
+     */
+    static final class Grid {
+        private final double cell;
+        private final long[] ids;
+        private final double[] xs;
+        private final double[] ys;
+        /**
+         * 格子 -> 该格子的店铺在数组中的起止下标
+         */
+        private final Map<Long, int[]> cells = new HashMap<>();
+        private int minCx = Integer.MAX_VALUE;
+        private int maxCx = Integer.MIN_VALUE;
+        private int minCy = Integer.MAX_VALUE;
+        private int maxCy = Integer.MIN_VALUE;
+
+        Grid(List<Map.Entry<Long, Point>> entries, double cell) {
+            this.cell = cell;
+            int size = entries.size();
+            long[] keys = new long[size];
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                Point point = entries.get(i).getValue();
+                int cx = cellOf(point.x);
+                int cy = cellOf(point.y);
+                keys[i] = key(cx, cy);
+                order[i] = i;
+                minCx = Math.min(minCx, cx);
+                maxCx = Math.max(maxCx, cx);
+                minCy = Math.min(minCy, cy);
+                maxCy = Math.max(maxCy, cy);
+            }
+            // 按格子排序，同一个格子的店铺连续存放
+            Arrays.sort(order, Comparator.comparingLong(i -> keys[i]));
+            ids = new long[size];
+            xs = new double[size];
+            ys = new double[size];
+            for (int i = 0; i < size; i++) {
+                Map.Entry<Long, Point> entry = entries.get(order[i]);
+                ids[i] = entry.getKey();
+                xs[i] = entry.getValue().x;
+                ys[i] = entry.getValue().y;
+                long key = keys[order[i]];
+                int[] range = cells.get(key);
+                if (range == null) {
+                    cells.put(key, new int[]{i, i + 1});
+                } else {
+                    range[1] = i + 1;
+                }
+            }
+        }
+
+        Map<Long, Double> search(double x, double y, double radius, int limit) {
+            // 大顶堆，保留最近的limit个
+            PriorityQueue<double[]> nearest = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(b[1], a[1]));
+            int cx = cellOf(x);
+            int cy = cellOf(y);
+            for (int ring = 0; ; ring++) {
+                // 只扫描这一圈中落在网格范围内的格子
+                for (int i = Math.max(cx - ring, minCx); i <= Math.min(cx + ring, maxCx); i++) {
+                    if (Math.abs(i - cx) == ring) {
+                        for (int j = Math.max(cy - ring, minCy); j <= Math.min(cy + ring, maxCy); j++) {
+                            scan(i, j, x, y, radius, limit, nearest);
+                        }
+                    } else {
+                        scan(i, cy - ring, x, y, radius, limit, nearest);
+                        scan(i, cy + ring, x, y, radius, limit, nearest);
+                    }
+                }
+                // 扫描完第ring圈后，外面的店铺距离至少是ring个格子的边长，经度方向的边长按离赤道更远的一侧计算
+                double latitude = Math.min(Math.abs(y) + ring * cell, 89);
+                double bound = ring * cell * METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+                if (bound > radius || (nearest.size() == limit && nearest.peek()[1] <= bound)) {
+                    break;
+                }
+                // 已经覆盖整个网格
+                if (cx - ring <= minCx && cx + ring >= maxCx && cy - ring <= minCy && cy + ring >= maxCy) {
+                    break;
+                }
+            }
+            List<double[]> sorted = new ArrayList<>(nearest);
+            sorted.sort(Comparator.comparingDouble(a -> a[1]));
+            Map<Long, Double> result = new LinkedHashMap<>();
+            for (double[] hit : sorted) {
+                result.put(ids[(int) hit[0]], hit[1]);
+            }
+            return result;
+        }
+
+        private void scan(int cx, int cy, double x, double y, double radius, int limit, PriorityQueue<double[]> nearest) {
+            int[] range = cells.get(key(cx, cy));
+            if (range == null) {
+                return;
+            }
+            for (int k = range[0]; k < range[1]; k++) {
+                double distance = distance(x, y, xs[k], ys[k]);
+                if (distance <= radius) {
+                    nearest.offer(new double[]{k, distance});
+                    if (nearest.size() > limit) {
+                        nearest.poll();
+                    }
+                }
+            }
+        }
+
+        private int cellOf(double degree) {
+            return (int) Math.floor(degree / cell);
+        }
+
+        private static long key(int cx, int cy) {
+            return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法id生成器，只在启动时访问redis租用workerId，之后生成id不依赖redis
+ * id结构：1位符号位 + 41位毫秒时间戳 + 10位workerId + 12位毫秒内序列号
+ * 懒加载，只有被 SystemConstants.ORDER_ID_WORKER 选中时才会创建并租用workerId
+ * 租约过期或者被其他实例占用时停止生成id，直到续期成功或者租到新的workerId
+ */
+@Slf4j
+@Lazy
+@Component
+public class SnowflakeIDWorker implements IDWorker {
+
+    private static final long BEGIN_TIMESTAMP = 1640995200000L;
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = WORKER_ID_BITS + SEQUENCE_BITS;
+    private static final String INSTANCE_ID = UUID.randomUUID().toString(true);
+
+    @Resource
+    private RedisTemplate<String, String> redisTemplate;
+    /**
+     * 上一次生成id的 时间戳 << SEQUENCE_BITS | 序列号，一个CAS同时更新两者
+     */
+    private final AtomicLong state = new AtomicLong();
+    private volatile long workerId = -1;
+    /**
+     * 租约有效期截止时间，超过后workerId可能已被其他实例占用，不能再生成id
+     */
+    private volatile long leaseValidUntil;
+    private ScheduledExecutorService leaseRenewExecutor;
+
+    public SnowflakeIDWorker() {
+    }
+
+    public SnowflakeIDWorker(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId超出范围: " + workerId);
+        }
+        this.workerId = workerId;
+        // 指定的workerId不需要租约
+        this.leaseValidUntil = Long.MAX_VALUE;
+    }
+
+    @Override
+    public long nextId(String keyPrefix) {
+        long now = System.currentTimeMillis();
+        if (now >= leaseValidUntil) {
+            throw new IllegalStateException("workerId租约已失效");
+        }
+        return nextId(now);
+    }
+
+    long nextId(long currentMillis) {
+        long now = currentMillis - BEGIN_TIMESTAMP;
+        long workerId = this.workerId;
+        while (true) {
+            long last = state.get();
+            long next;
+            if (now > last >>> SEQUENCE_BITS) {
+                // 新的毫秒，序列号从0开始
+                next = now << SEQUENCE_BITS;
+            } else {
+                // 同一毫秒或者时钟回拨，沿用上一次的时间戳继续递增
+                // 序列号用完时进位到下一毫秒，时钟追上之前id依然递增不重复
+                next = last + 1;
+            }
+            if (state.compareAndSet(last, next)) {
+                return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT | workerId << SEQUENCE_BITS | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 启动时从redis租用一个未被占用的workerId，并定时续期
+     */
+    @PostConstruct
+    private void leaseWorkerId() {
+        if (workerId >= 0) {
+            return;
+        }
+        if (!acquireWorkerId()) {
+            throw new IllegalStateException("没有可用的workerId");
+        }
+        leaseRenewExecutor = Executors.newSingleThreadScheduledExecutor();
+        leaseRenewExecutor.scheduleAtFixedRate(this::renewLease,
+                RedisConstants.ID_WORKER_TTL / 3, RedisConstants.ID_WORKER_TTL / 3, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 从随机位置开始依次尝试占用workerId
+     *
+     * @return 是否租用成功
+     */
+    private boolean acquireWorkerId() {
+        long start = ThreadLocalRandom.current().nextLong(MAX_WORKER_ID + 1);
+        for (long i = 0; i <= MAX_WORKER_ID; i++) {
+            long candidate = (start + i) & MAX_WORKER_ID;
+            long leaseStart = System.currentTimeMillis();
+            Boolean leased = redisTemplate.opsForValue().setIfAbsent(RedisConstants.ID_WORKER_KEY + candidate,
+                    INSTANCE_ID, RedisConstants.ID_WORKER_TTL, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(leased)) {
+                workerId = candidate;
+                leaseValidUntil = leaseStart + TimeUnit.SECONDS.toMillis(RedisConstants.ID_WORKER_TTL);
+                log.info("雪花算法workerId: {}", workerId);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void renewLease() {
+        try {
+            // 以发起续期的时间计算有效期，保证不会晚于redis中key的实际过期时间
+            long renewStart = System.currentTimeMillis();
+            String key = RedisConstants.ID_WORKER_KEY + workerId;
+            String owner = redisTemplate.opsForValue().get(key);
+            boolean renewed;
+            if (owner == null) {
+                // redis不可用期间租约过期，尝试重新占用
+                renewed = Boolean.TRUE.equals(redisTemplate.opsForValue()
+                        .setIfAbsent(key, INSTANCE_ID, RedisConstants.ID_WORKER_TTL, TimeUnit.SECONDS));
+            } else {
+                renewed = INSTANCE_ID.equals(owner)
+                        && Boolean.TRUE.equals(redisTemplate.expire(key, RedisConstants.ID_WORKER_TTL, TimeUnit.SECONDS));
+            }
+            if (renewed) {
+                leaseValidUntil = renewStart + TimeUnit.SECONDS.toMillis(RedisConstants.ID_WORKER_TTL);
+                return;
+            }
+            // workerId已被其他实例占用，立即停止生成id并租用新的workerId
+            log.error("workerId {} 的租约已被其他实例占用，重新租用workerId", workerId);
+            leaseValidUntil = 0;
+            if (!acquireWorkerId()) {
+                log.error("没有可用的workerId，停止生成id");
+            }
+        } catch (Exception e) {
+            // 续期失败时保持原有效期，过期后nextId会拒绝生成id
+            log.error("workerId {} 续期失败", workerId, e);
+        }
+    }
+
+    @PreDestroy
+    private void releaseWorkerId() {
+        if (leaseRenewExecutor == null) {
+            return;
+        }
+        leaseRenewExecutor.shutdown();
+        String key = RedisConstants.ID_WORKER_KEY + workerId;
+        if (INSTANCE_ID.equals(redisTemplate.opsForValue().get(key))) {
+            redisTemplate.delete(key);
+        }
+    }
+}
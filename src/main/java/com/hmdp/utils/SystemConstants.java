@@ -9,4 +9,201 @@ public class SystemConstants {
     public static final String SESSION_USER = "user";
     public static final String PHONE = "phone";
     public static final String TOKEN = "authorization";
+    /**
+     * 秒杀订单消费者线程数，同一个JVM内的消费者共享消费者组g1
+     */
+    public static final int SECKILL_ORDER_CONSUMERS = 4;
+    /**
+     * 每个消费者单次从stream.orders拉取的最大订单数
+     */
+    public static final int SECKILL_ORDER_BATCH_SIZE = 50;
+    /**
+     * 批量写入模式，一批订单一个事务：一条多行insert，每个优惠券一条扣减库存的update
+     */
+    public static final boolean SECKILL_ORDER_BATCH_PERSIST = true;
+    /**
+     * pendingList中的消息空闲超过该秒数视为处理失败，由恢复任务认领
+     */
+    public static final long SECKILL_PENDING_IDLE = 30L;
+    /**
+     * pendingList恢复任务的执行间隔，秒
+     */
+    public static final long SECKILL_PENDING_RECOVERY_INTERVAL = 5L;
+    /**
+     * 订单消息最多投递次数，超过后转入死信队列
+     */
+    public static final int SECKILL_ORDER_MAX_DELIVERIES = 5;
+    /**
+     * 订单id生成器的bean名称 redisIDWorker：redis号段 snowflakeIDWorker：本地雪花算法
+     */
+    public static final String ORDER_ID_WORKER = "redisIDWorker";
+    /**
+     * 租用库存模式，每个节点从redis批量租用库存到本地扣减
+     */
+    public static final boolean SECKILL_STOCK_LEASE = false;
+    /**
+     * 每次租用的库存数量
+     */
+    public static final int SECKILL_STOCK_LEASE_CHUNK = 100;
+    /**
+     * 租用的库存超过该秒数没有请求时归还redis
+     */
+    public static final long SECKILL_STOCK_LEASE_IDLE = 30L;
+    /**
+     * 租用库存节点的心跳过期秒数，心跳过期的节点没用完的库存会被其他节点回收
+     */
+    public static final long SECKILL_STOCK_LEASE_HEARTBEAT_TTL = 30L;
+    /**
+     * 是否在redis前面启用进程内的一级缓存
+     */
+    public static final boolean CACHE_L1_ENABLED = true;
+    /**
+     * 一级缓存最多保存的对象数，超出后按LRU淘汰
+     */
+    public static final int CACHE_L1_CAPACITY = 10000;
+    /**
+     * 一级缓存的过期秒数，兜底失效消息丢失的情况
+     */
+    public static final long CACHE_L1_TTL = 30L;
+    /**
+     * 是否开启基于redis客户端缓存（CLIENT TRACKING）的近端缓存，需要redis6以上
+     * 开启后缓存key的读取经过近端缓存，redis主动推送失效消息；可以同时关闭一级缓存，不再依赖自己的失效消息
+     */
+    public static final boolean CACHE_NEAR_ENABLED = false;
+    /**
+     * 近端缓存最多保存的key数，超出后按LRU淘汰
+     */
+    public static final int CACHE_NEAR_CAPACITY = 10000;
+    /**
+     * 近端缓存的过期秒数，兜底连接异常时丢失的失效消息
+     */
+    public static final long CACHE_NEAR_TTL = 300L;
+    /**
+     * 缓存对象使用二进制编码写入，读取时两种格式都支持
+     * 滚动升级时先以false部署（只写JSON，新旧节点都能读），全部节点升级后再打开
+     */
+    public static final boolean CACHE_BINARY_CODEC = false;
+    /**
+     * 店铺缓存使用提前刷新模式，写入的数据前面带有数据头，升级前的节点无法解析
+     * 滚动升级时先以false部署（按原来的格式读写，新节点能读两种格式），全部节点升级后再打开
+     */
+    public static final boolean CACHE_EARLY_REFRESH = false;
+    /**
+     * 提前刷新模式下过期时间的随机抖动比例，实际过期时间为 ttl * (1 + [0, 抖动))
+     */
+    public static final double CACHE_TTL_JITTER = 0.1;
+    /**
+     * XFetch算法的beta，大于1更倾向提前刷新，小于1更倾向接近过期再刷新
+     */
+    public static final double CACHE_EARLY_REFRESH_BETA = 1.0;
+    /**
+     * 缓存后台刷新的线程数
+     */
+    public static final int CACHE_REFRESH_THREADS = 10;
+    /**
+     * 缓存后台刷新的排队上限，满了丢弃新的刷新任务并继续返回旧值
+     */
+    public static final int CACHE_REFRESH_QUEUE = 1000;
+    /**
+     * 延迟双删的第二次删除延迟 毫秒，应大于一次读数据库并写回缓存的耗时
+     */
+    public static final long CACHE_DOUBLE_DELETE_DELAY = 500L;
+    /**
+     * 删除缓存失败的最多重试次数
+     */
+    public static final int CACHE_EVICT_MAX_RETRIES = 5;
+    /**
+     * 删除缓存失败的首次重试间隔 毫秒，之后逐次翻倍
+     */
+    public static final long CACHE_EVICT_RETRY_INTERVAL = 200L;
+    /**
+     * 缓存未命中时等待其他线程或节点重建缓存的最长时间 毫秒
+     */
+    public static final long CACHE_LOAD_WAIT = 3000L;
+    /**
+     * 互斥锁被其他节点持有时，轮询redis的初始间隔 毫秒，之后逐次翻倍
+     */
+    public static final long CACHE_LOAD_RETRY_INTERVAL = 50L;
+    /**
+     * 热点key探测的采样率，每N次访问计数一次
+     */
+    public static final int HOT_KEY_SAMPLE = 8;
+    /**
+     * count-min sketch每行的计数器数量，取2的幂
+     */
+    public static final int HOT_KEY_SKETCH_WIDTH = 4096;
+    /**
+     * 热点key统计窗口 秒，每个窗口结束时重新选出热点key并把计数减半
+     */
+    public static final long HOT_KEY_WINDOW = 10L;
+    /**
+     * 一个窗口内采样计数达到该值才可能成为热点key
+     */
+    public static final long HOT_KEY_MIN_COUNT = 50L;
+    /**
+     * 最多同时存在的热点key数量
+     */
+    public static final int HOT_KEY_TOP_K = 32;
+    /**
+     * 热点key候选集合的容量上限
+     */
+    public static final int HOT_KEY_CANDIDATES = 1024;
+    /**
+     * 热点key固定在本地的过期秒数
+     */
+    public static final long HOT_KEY_TTL = 3L;
+    /**
+     * 布隆过滤器名称
+     */
+    public static final String BLOOM_SHOP = "shop";
+    public static final String BLOOM_USER = "user";
+    public static final String BLOOM_BLOG = "blog";
+    /**
+     * 布隆过滤器期望误判率
+     */
+    public static final double BLOOM_FPP = 0.01;
+    /**
+     * 每个布隆过滤器位数组最多占用的字节数
+     */
+    public static final long BLOOM_MAX_BYTES = 16L * 1024 * 1024;
+    /**
+     * 按当前数据量的多少倍分配布隆过滤器，给两次重建之间的新增数据留出空间
+     */
+    public static final double BLOOM_GROWTH_FACTOR = 2.0;
+    /**
+     * 布隆过滤器重建间隔 小时
+     */
+    public static final long BLOOM_REBUILD_INTERVAL = 6L;
+    /**
+     * 布隆过滤器增量加载新数据的间隔 秒
+     */
+    public static final long BLOOM_SYNC_INTERVAL = 10L;
+    /**
+     * 比已加载的最大id大不超过该值的id视为可能存在，覆盖两次增量加载之间新增的数据
+     */
+    public static final long BLOOM_RECENT_ID_WINDOW = 1000L;
+    /**
+     * 加载主键时每批查询的数量
+     */
+    public static final int BLOOM_LOAD_BATCH = 10000;
+    /**
+     * 附近店铺是否使用进程内的位置索引，false时使用redis GEO
+     */
+    public static final boolean SHOP_GEO_INDEX_ENABLED = true;
+    /**
+     * 位置索引网格的格子大小 度，约1公里
+     */
+    public static final double SHOP_GEO_CELL = 0.01;
+    /**
+     * 附近店铺的查询半径 米
+     */
+    public static final double SHOP_GEO_RADIUS = 5000;
+    /**
+     * 位置索引全量重建间隔 分钟，兜底丢失的更新消息和直接修改数据库的情况
+     */
+    public static final long SHOP_GEO_REBUILD_INTERVAL = 30L;
+    /**
+     * 加载店铺坐标时每批查询的数量
+     */
+    public static final int SHOP_GEO_LOAD_BATCH = 10000;
 }
@@ -0,0 +1,16 @@
+-- 批量更新订单状态
+-- ARGV[1]：状态过期秒数，之后每两个参数为一组：订单id、状态码
+local ttl = ARGV[1]
+
+for i = 2, #ARGV, 2 do
+    local statusKey = 'order:status:' .. ARGV[i]
+    -- 只更新下单时写入的状态，过期的订单不再补写，也就没有下单用户可以校验
+    if (redis.call('type', statusKey)['ok'] == 'hash') then
+        -- 下单成功是最终状态，消息重复投递时不能被覆盖成限购一次
+        if (redis.call('hget', statusKey, 'code') ~= '1') then
+            redis.call('hset', statusKey, 'code', ARGV[i + 1])
+        end
+        redis.call('expire', statusKey, ttl)
+    end
+end
+return 0
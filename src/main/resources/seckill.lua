@@ -1,11 +1,32 @@
+-- 脚本中调用了time，redis5以下需要按命令复制
+redis.replicate_commands()
+
 local voucherId = ARGV[1]
 local userId = ARGV[2]
 local orderId = ARGV[3]
+local statusTtl = ARGV[4]
+
+local stockKey = 'seckill:stock:' .. voucherId
+local orderKey = 'seckill:order:' .. voucherId
 
-local stockKey = 'seckill:stock' .. voucherId
-local orderKey = 'seckill:order' .. voucherId
+-- 校验秒杀时间和优惠券状态，没有元数据的优惠券不校验
+local meta = redis.call('hmget', 'seckill:voucher:' .. voucherId, 'begin', 'end', 'status')
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+if (meta[3] and tonumber(meta[3]) ~= 1) then
+    -- 优惠券已下架或过期
+    return 5
+end
+if (meta[1] and now < tonumber(meta[1])) then
+    -- 秒杀尚未开始
+    return 3
+end
+if (meta[2] and now > tonumber(meta[2])) then
+    -- 秒杀已经结束
+    return 4
+end
 
-if (tonumber('get', redis.call(stockKey)) <= 0) then
+if (tonumber(redis.call('get', stockKey) or 0) <= 0) then
     -- 库存不足
     return 1
 end
@@ -19,4 +40,8 @@ redis.call('incrby', stockKey, -1)
 redis.call('sadd', orderKey, userId)
 -- 发送消息到消息队列
 redis.call('xadd', 'stream.orders','*','voucherId',voucherId,'userId',userId,'id',orderId)
-return 0
\ No newline at end of file
+-- 订单状态：排队中，记录下单用户，只允许本人查询
+local statusKey = 'order:status:' .. orderId
+redis.call('hmset', statusKey, 'code', '0', 'userId', userId)
+redis.call('expire', statusKey, statusTtl)
+return 0
@@ -0,0 +1,61 @@
+-- 从redis库存中租用一批库存到本地
+-- 返回值 >0：实际租到的数量 0：库存已被其他节点租完，但它们的租约还没用完 -1：库存和所有租约都已用完
+-- -3 -4 -5：秒杀尚未开始、已经结束、已下架，和seckill.lua的返回值对应
+-- 脚本中调用了time，redis5以下需要按命令复制
+redis.replicate_commands()
+
+local voucherId = ARGV[1]
+local chunk = tonumber(ARGV[2])
+local nodeId = ARGV[3]
+local heartbeatTtl = ARGV[4]
+
+local stockKey = 'seckill:stock:' .. voucherId
+-- 各节点已租用但还没有下单的库存 节点id -> 数量
+local leasedKey = 'seckill:leased:' .. voucherId
+local nodeKeyPrefix = 'seckill:lease:node:'
+
+-- 不在秒杀时间内不租用库存，避免库存提前被租到各个节点
+local meta = redis.call('hmget', 'seckill:voucher:' .. voucherId, 'begin', 'end', 'status')
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+if (meta[3] and tonumber(meta[3]) ~= 1) then
+    return -5
+end
+if (meta[1] and now < tonumber(meta[1])) then
+    return -3
+end
+if (meta[2] and now > tonumber(meta[2])) then
+    return -4
+end
+
+-- 租用前刷新自己的心跳，心跳过期的节点视为已宕机
+redis.call('set', nodeKeyPrefix .. nodeId, '1', 'EX', heartbeatTtl)
+
+local stock = tonumber(redis.call('get', stockKey) or 0)
+if (stock <= 0) then
+    -- 回收心跳已过期的节点没有用完的库存
+    local leased = redis.call('hgetall', leasedKey)
+    local alive = 0
+    for i = 1, #leased, 2 do
+        local count = tonumber(leased[i + 1])
+        if (redis.call('exists', nodeKeyPrefix .. leased[i]) == 0) then
+            redis.call('hdel', leasedKey, leased[i])
+            if (count > 0) then
+                stock = stock + count
+            end
+        elseif (count > 0) then
+            alive = alive + count
+        end
+    end
+    if (stock <= 0) then
+        if (alive > 0) then
+            return 0
+        end
+        return -1
+    end
+    redis.call('incrby', stockKey, stock)
+end
+local granted = math.min(stock, chunk)
+redis.call('incrby', stockKey, -granted)
+redis.call('hincrby', leasedKey, nodeId, granted)
+return granted
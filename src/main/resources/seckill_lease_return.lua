@@ -0,0 +1,20 @@
+-- 归还本地未用完的租用库存
+local voucherId = ARGV[1]
+local count = tonumber(ARGV[2])
+local nodeId = ARGV[3]
+
+local leasedKey = 'seckill:leased:' .. voucherId
+
+-- 租约已被其他节点回收的部分不再归还，防止重复计入库存
+local held = tonumber(redis.call('hget', leasedKey, nodeId) or 0)
+local returned = math.min(held, count)
+if (returned <= 0) then
+    return 0
+end
+if (held - returned <= 0) then
+    redis.call('hdel', leasedKey, nodeId)
+else
+    redis.call('hincrby', leasedKey, nodeId, -returned)
+end
+redis.call('incrby', 'seckill:stock:' .. voucherId, returned)
+return returned
@@ -0,0 +1,50 @@
+-- 租用库存模式下库存已在本地扣减，这里只做一人一单校验和下单
+-- 脚本中调用了time，redis5以下需要按命令复制
+redis.replicate_commands()
+
+local voucherId = ARGV[1]
+local userId = ARGV[2]
+local orderId = ARGV[3]
+local statusTtl = ARGV[4]
+local nodeId = ARGV[5]
+
+local orderKey = 'seckill:order:' .. voucherId
+
+-- 校验秒杀时间和优惠券状态，没有元数据的优惠券不校验
+local meta = redis.call('hmget', 'seckill:voucher:' .. voucherId, 'begin', 'end', 'status')
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+if (meta[3] and tonumber(meta[3]) ~= 1) then
+    -- 优惠券已下架或过期
+    return 5
+end
+if (meta[1] and now < tonumber(meta[1])) then
+    -- 秒杀尚未开始
+    return 3
+end
+if (meta[2] and now > tonumber(meta[2])) then
+    -- 秒杀已经结束
+    return 4
+end
+
+local leasedKey = 'seckill:leased:' .. voucherId
+if (tonumber(redis.call('hget', leasedKey, nodeId) or 0) <= 0) then
+    -- 本节点的租约已用完或者心跳过期被其他节点回收，本地库存作废
+    return 6
+end
+
+if (redis.call('sismember', orderKey, userId) == 1) then
+    -- 说明该用户已经下过单
+    return 2
+end
+
+redis.call('sadd', orderKey, userId)
+-- 租用的库存已经用掉一个
+redis.call('hincrby', leasedKey, nodeId, -1)
+-- 发送消息到消息队列
+redis.call('xadd', 'stream.orders','*','voucherId',voucherId,'userId',userId,'id',orderId)
+-- 订单状态：排队中，记录下单用户，只允许本人查询
+local statusKey = 'order:status:' .. orderId
+redis.call('hmset', statusKey, 'code', '0', 'userId', userId)
+redis.call('expire', statusKey, statusTtl)
+return 0
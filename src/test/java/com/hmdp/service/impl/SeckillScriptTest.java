@@ -0,0 +1,175 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.config.RedisConfig;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.dto.VoucherOrderStatus;
+import com.hmdp.entity.Voucher;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SnowflakeIDWorker;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 用生产环境的RedisTemplate配置执行秒杀脚本，校验java写入的key、脚本参数和lua脚本拼接的key一致
+ * 需要redis，默认连接 localhost:6379，可以通过 -Dredis.host -Dredis.port -Dredis.password 指定，连接不上时跳过
+ */
+class SeckillScriptTest {
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate stringRedisTemplate;
+    private static RedisTemplate<String, Object> redisTemplate;
+
+    private final long voucherId = System.currentTimeMillis();
+    private final List<String> orderIds = new ArrayList<>();
+    private VoucherServiceImpl voucherService;
+    private VoucherOrderServiceImpl voucherOrderService;
+
+    @BeforeAll
+    static void connect() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        configuration.setPassword(System.getProperty("redis.password"));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        try {
+            connectionFactory.getConnection().close();
+        } catch (Exception e) {
+            connectionFactory.destroy();
+            connectionFactory = null;
+            assumeTrue(false, "redis不可用: " + e.getMessage());
+        }
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate = new RedisConfig().redisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        SeckillSoldOutRegistry soldOutRegistry = new SeckillSoldOutRegistry();
+        ReflectionTestUtils.setField(soldOutRegistry, "redisTemplate", redisTemplate);
+        voucherService = new VoucherServiceImpl();
+        ReflectionTestUtils.setField(voucherService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(voucherService, "soldOutRegistry", soldOutRegistry);
+        voucherOrderService = new VoucherOrderServiceImpl();
+        ReflectionTestUtils.setField(voucherOrderService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(voucherOrderService, "soldOutRegistry", soldOutRegistry);
+        ReflectionTestUtils.setField(voucherOrderService, "idWorker", new SnowflakeIDWorker(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserHolder.removeUser();
+        stringRedisTemplate.delete(Arrays.asList(RedisConstants.SECKILL_STOCK_KEY + voucherId,
+                RedisConstants.SECKILL_ORDER_KEY + voucherId, RedisConstants.SECKILL_VOUCHER_KEY + voucherId));
+        for (String orderId : orderIds) {
+            stringRedisTemplate.delete(RedisConstants.ORDER_STATUS_KEY + orderId);
+        }
+        // 只删除本次测试发送的订单消息
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(RedisConstants.STREAM_ORDERS, Range.unbounded());
+        if (records != null) {
+            records.stream()
+                    .filter(record -> String.valueOf(voucherId).equals(record.getValue().get("voucherId")))
+                    .forEach(record -> stringRedisTemplate.opsForStream().delete(RedisConstants.STREAM_ORDERS, record.getId()));
+        }
+    }
+
+    @Test
+    void seckillWithProductionTemplates() {
+        saveVoucher(LocalDateTime.now().minusHours(1), LocalDateTime.now().plusHours(1), 2);
+
+        Result first = seckill(1L);
+        assertTrue(first.getSuccess(), first.getErrorMsg());
+        String orderId = first.getData().toString();
+        // 订单状态key由lua脚本写入，查询接口能直接读到
+        assertEquals(VoucherOrderStatus.QUEUED, voucherOrderService.queryOrderStatus(Long.valueOf(orderId)).getData());
+        // 订单消息中的字段是普通字符串
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(RedisConstants.STREAM_ORDERS, Range.unbounded());
+        assertTrue(records.stream().anyMatch(record -> orderId.equals(record.getValue().get("id"))
+                && "1".equals(record.getValue().get("userId"))));
+
+        assertEquals("不可重复购买", seckill(1L).getErrorMsg());
+        assertTrue(seckill(2L).getSuccess());
+        assertEquals("库存不足", seckill(3L).getErrorMsg());
+        // 其他用户查不到这个订单的状态
+        assertFalse(voucherOrderService.queryOrderStatus(Long.valueOf(orderId)).getSuccess());
+    }
+
+    @Test
+    void persistedStatusIsNotOverwritten() {
+        saveVoucher(LocalDateTime.now().minusHours(1), LocalDateTime.now().plusHours(1), 1);
+        Long orderId = Long.valueOf(seckill(1L).getData().toString());
+
+        publishOrderStatus(orderId, VoucherOrderStatus.PERSISTED);
+        // 消息重复投递时，消费者会把同一个订单判成限购一次
+        publishOrderStatus(orderId, VoucherOrderStatus.DUPLICATE);
+        assertEquals(VoucherOrderStatus.PERSISTED, voucherOrderService.queryOrderStatus(orderId).getData());
+    }
+
+    @Test
+    void seckillOutsideSaleWindowIsRejected() {
+        saveVoucher(LocalDateTime.now().plusHours(1), LocalDateTime.now().plusHours(2), 1);
+        assertEquals("秒杀尚未开始", seckill(1L).getErrorMsg());
+
+        saveVoucher(LocalDateTime.now().minusHours(2), LocalDateTime.now().minusHours(1), 1);
+        Result result = seckill(1L);
+        assertFalse(result.getSuccess());
+        assertEquals("秒杀已经结束", result.getErrorMsg());
+    }
+
+    private void saveVoucher(LocalDateTime begin, LocalDateTime end, int stock) {
+        Voucher voucher = new Voucher();
+        voucher.setId(voucherId);
+        voucher.setBeginTime(begin);
+        voucher.setEndTime(end);
+        ReflectionTestUtils.invokeMethod(voucherService, "saveSeckillMeta", voucher);
+        ReflectionTestUtils.invokeMethod(voucherService, "saveSeckillStock", voucherId, stock);
+    }
+
+    private void publishOrderStatus(Long orderId, VoucherOrderStatus status) {
+        ReflectionTestUtils.invokeMethod(voucherOrderService, "publishOrderStatus", Collections.singletonMap(orderId, status));
+    }
+
+    private Result seckill(Long userId) {
+        UserDTO user = new UserDTO();
+        user.setId(userId);
+        UserHolder.saveUser(user);
+        Result result = voucherOrderService.seckillVoucher(voucherId);
+        if (Boolean.TRUE.equals(result.getSuccess())) {
+            orderIds.add(result.getData().toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryCacheCodecTest {
+
+    private final BinaryCacheCodec codec = new BinaryCacheCodec();
+
+    @Test
+    void roundTrip() {
+        Shop shop = shop();
+        assertTrue(codec.supports(Shop.class));
+        assertEquals(shop, codec.decode(codec.encode(shop), Shop.class));
+
+        // 空字段通过位图还原为null
+        Shop empty = new Shop().setId(-1L);
+        assertEquals(empty, codec.decode(codec.encode(empty), Shop.class));
+    }
+
+    @Test
+    void truncatedDataDecodesToNull() {
+        byte[] bytes = codec.encode(shop());
+        for (int length = 0; length < bytes.length; length++) {
+            assertNull(codec.decode(Arrays.copyOf(bytes, length), Shop.class), "截断到" + length + "字节");
+        }
+    }
+
+    @Test
+    void trailingDataDecodesToNull() {
+        byte[] bytes = codec.encode(shop());
+        assertNull(codec.decode(Arrays.copyOf(bytes, bytes.length + 1), Shop.class));
+    }
+
+    @Test
+    void corruptDataDoesNotThrow() {
+        byte[] bytes = codec.encode(shop());
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] corrupt = bytes.clone();
+            // 保留数据头，只破坏字段部分
+            for (int j = 0; j < 3; j++) {
+                corrupt[6 + random.nextInt(corrupt.length - 6)] = (byte) random.nextInt(256);
+            }
+            assertDoesNotThrow(() -> codec.decode(corrupt, Shop.class));
+        }
+    }
+
+    private static Shop shop() {
+        return new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://example.com/1.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 11, 16, 5, 12, 123_000_000));
+    }
+}
@@ -0,0 +1,142 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用mock的redis校验CacheClient的读取路径，不需要redis
+ */
+class CacheClientTest {
+
+    private static final String KEY_PREFIX = "test:shop:";
+
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private ValueOperations<String, String> valueOperations;
+    private CacheClient cacheClient;
+
+    @BeforeEach
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void setUp() {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        // 和RedisConfig中的value序列化方式一致
+        when(redisTemplate.getValueSerializer()).thenReturn((RedisSerializer) new GenericJackson2JsonRedisSerializer());
+        HotKeyDetector hotKeys = new HotKeyDetector();
+        CacheRefreshScheduler refreshScheduler = new CacheRefreshScheduler();
+        ReflectionTestUtils.setField(refreshScheduler, "hotKeyDetector", hotKeys);
+        cacheClient = new CacheClient(redisTemplate, mock(RedisMessageListenerContainer.class), mock(BloomFilterRegistry.class),
+                new CacheStats(), hotKeys, refreshScheduler, mock(NearCache.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        blocked.countDown();
+    }
+
+    @Test
+    void hotKeyIsRefreshedBeforeColdKey() throws InterruptedException {
+        // 占满所有刷新线程，后面提交的任务都在队列中排队
+        CacheRefreshScheduler refreshScheduler = (CacheRefreshScheduler) ReflectionTestUtils.getField(cacheClient, "refreshScheduler");
+        CountDownLatch started = new CountDownLatch(SystemConstants.CACHE_REFRESH_THREADS);
+        for (int i = 0; i < SystemConstants.CACHE_REFRESH_THREADS; i++) {
+            refreshScheduler.submit("test:blocker:" + i, () -> {
+                started.countDown();
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // 冷key过期后先提交刷新
+        when(valueOperations.get(KEY_PREFIX + 1)).thenReturn(redisData(LocalDateTime.now().minusMinutes(1)));
+        cacheClient.queryWithLogicalExpire(KEY_PREFIX, 1L, Shop.class, "test:lock:", id -> null, 30L, TimeUnit.MINUTES);
+        // 热key在过期前被频繁读取，过期后才提交刷新
+        when(valueOperations.get(KEY_PREFIX + 2)).thenReturn(redisData(LocalDateTime.now().plusMinutes(1)));
+        for (int i = 0; i < 1000; i++) {
+            cacheClient.queryWithLogicalExpire(KEY_PREFIX, 2L, Shop.class, "test:lock:", id -> null, 30L, TimeUnit.MINUTES);
+        }
+        when(valueOperations.get(KEY_PREFIX + 2)).thenReturn(redisData(LocalDateTime.now().minusMinutes(1)));
+        cacheClient.queryWithLogicalExpire(KEY_PREFIX, 2L, Shop.class, "test:lock:", id -> null, 30L, TimeUnit.MINUTES);
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(refreshScheduler, "refreshExecutor");
+        assertEquals(2, executor.getQueue().size());
+        // 热key后提交但先出队
+        assertEquals(KEY_PREFIX + 2, ReflectionTestUtils.getField(executor.getQueue().peek(), "key"));
+    }
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        // redis中没有缓存，互斥锁总能获取成功
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class))).thenReturn(true);
+        int threads = 16;
+        AtomicInteger loads = new AtomicInteger();
+        Shop shop = new Shop().setId(3L).setName("103茶餐厅");
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Shop>> results = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    barrier.await();
+                    return cacheClient.queryWithMutex(KEY_PREFIX, "test:lock:", 3L, id -> {
+                        loads.incrementAndGet();
+                        // 加载期间其他线程都会未命中
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return shop;
+                    }, Shop.class, 30L, TimeUnit.MINUTES);
+                }));
+            }
+            for (Future<Shop> result : results) {
+                assertSame(shop, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    private static String redisData(LocalDateTime expireTime) {
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(expireTime);
+        redisData.setData(new Shop().setId(1L).setName("103茶餐厅"));
+        return JSONUtil.toJsonStr(redisData);
+    }
+}
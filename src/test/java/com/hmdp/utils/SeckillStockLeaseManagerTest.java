@@ -0,0 +1,160 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.RedisConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 模拟两个节点租用同一个优惠券的库存，校验宕机节点的租约能被回收
+ * 需要redis，默认连接 localhost:6379，可以通过 -Dredis.host -Dredis.port -Dredis.password 指定，连接不上时跳过
+ */
+class SeckillStockLeaseManagerTest {
+
+    private static final DefaultRedisScript<Long> ORDER_SCRIPT;
+
+    static {
+        ORDER_SCRIPT = new DefaultRedisScript<>();
+        ORDER_SCRIPT.setLocation(new ClassPathResource("seckill_order.lua"));
+        ORDER_SCRIPT.setResultType(Long.class);
+    }
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate stringRedisTemplate;
+    private static RedisTemplate<String, Object> redisTemplate;
+
+    private final long voucherId = System.currentTimeMillis();
+    private final List<String> orderIds = new ArrayList<>();
+    private SeckillStockLeaseManager nodeA;
+    private SeckillStockLeaseManager nodeB;
+    private SeckillSoldOutRegistry registryB;
+
+    @BeforeAll
+    static void connect() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        configuration.setPassword(System.getProperty("redis.password"));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        try {
+            connectionFactory.getConnection().close();
+        } catch (Exception e) {
+            connectionFactory.destroy();
+            connectionFactory = null;
+            assumeTrue(false, "redis不可用: " + e.getMessage());
+        }
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate = new RedisConfig().redisTemplate(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        nodeA = node(new SeckillSoldOutRegistry());
+        registryB = new SeckillSoldOutRegistry();
+        nodeB = node(registryB);
+        // 库存不超过一次租用的数量，节点A一次就能租完
+        stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_STOCK_KEY + voucherId, "3");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stringRedisTemplate.delete(Arrays.asList(RedisConstants.SECKILL_STOCK_KEY + voucherId,
+                RedisConstants.SECKILL_ORDER_KEY + voucherId, "seckill:leased:" + voucherId,
+                RedisConstants.SECKILL_LEASE_NODE_KEY + nodeA.getNodeId(),
+                RedisConstants.SECKILL_LEASE_NODE_KEY + nodeB.getNodeId()));
+        for (String orderId : orderIds) {
+            stringRedisTemplate.delete(RedisConstants.ORDER_STATUS_KEY + orderId);
+        }
+        // 只删除本次测试发送的订单消息
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(RedisConstants.STREAM_ORDERS, Range.unbounded());
+        if (records != null) {
+            records.stream()
+                    .filter(record -> String.valueOf(voucherId).equals(record.getValue().get("voucherId")))
+                    .forEach(record -> stringRedisTemplate.opsForStream().delete(RedisConstants.STREAM_ORDERS, record.getId()));
+        }
+    }
+
+    @Test
+    void leaseOfDeadNodeIsReclaimed() {
+        assertEquals(0, nodeA.tryAcquire(voucherId));
+        // 节点A还持有租约，节点B只拒绝本次请求，不标记售罄
+        assertEquals(1, nodeB.tryAcquire(voucherId));
+        assertFalse(registryB.isSoldOut(voucherId));
+
+        // 节点A宕机，心跳过期
+        stringRedisTemplate.delete(RedisConstants.SECKILL_LEASE_NODE_KEY + nodeA.getNodeId());
+
+        // 节点B回收节点A没用完的3个库存
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, nodeB.tryAcquire(voucherId), "第" + i + "次扣减");
+        }
+        assertEquals(1, nodeB.tryAcquire(voucherId));
+        // 节点A恢复后用本地剩余的库存下单会被拒绝
+        assertEquals(6L, order(nodeA, 1L));
+        // 节点B下单扣减的是自己的租约，全部用完后才标记售罄
+        for (long userId = 2; userId <= 4; userId++) {
+            assertEquals(0L, order(nodeB, userId));
+        }
+        assertEquals(1, nodeB.tryAcquire(voucherId));
+        assertTrue(registryB.isSoldOut(voucherId));
+    }
+
+    @Test
+    void returnSkipsReclaimedLease() {
+        assertEquals(0, nodeA.tryAcquire(voucherId));
+        stringRedisTemplate.delete(RedisConstants.SECKILL_LEASE_NODE_KEY + nodeA.getNodeId());
+        assertEquals(0, nodeB.tryAcquire(voucherId));
+
+        // 节点A的租约已被回收，归还时不能把库存重复加回redis
+        nodeA.returnLease(voucherId);
+        assertEquals("0", stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_STOCK_KEY + voucherId));
+        // 节点B自己用掉了一个
+        nodeB.returnLease(voucherId);
+        assertEquals("2", stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_STOCK_KEY + voucherId));
+    }
+
+    private SeckillStockLeaseManager node(SeckillSoldOutRegistry soldOutRegistry) {
+        ReflectionTestUtils.setField(soldOutRegistry, "redisTemplate", redisTemplate);
+        SeckillStockLeaseManager manager = new SeckillStockLeaseManager();
+        ReflectionTestUtils.setField(manager, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(manager, "soldOutRegistry", soldOutRegistry);
+        return manager;
+    }
+
+    private Long order(SeckillStockLeaseManager node, Long userId) {
+        String orderId = String.valueOf(System.nanoTime());
+        orderIds.add(orderId);
+        return stringRedisTemplate.execute(ORDER_SCRIPT, Collections.emptyList(), String.valueOf(voucherId),
+                userId.toString(), orderId, RedisConstants.ORDER_STATUS_TTL.toString(), node.getNodeId());
+    }
+}
@@ -0,0 +1,67 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShopGeoIndexTest {
+
+    private static final int SHOPS = 20_000;
+    private static final int QUERIES = 300;
+
+    @Test
+    void gridSearchMatchesBruteForce() {
+        Random random = new Random(7);
+        List<Map.Entry<Long, ShopGeoIndex.Point>> entries = new ArrayList<>(SHOPS);
+        for (long id = 1; id <= SHOPS; id++) {
+            entries.add(new AbstractMap.SimpleEntry<>(id,
+                    new ShopGeoIndex.Point(1, 120 + random.nextDouble() * 0.5, 30 + random.nextDouble() * 0.5)));
+        }
+        ShopGeoIndex.Grid grid = new ShopGeoIndex.Grid(entries, SystemConstants.SHOP_GEO_CELL);
+
+        for (int q = 0; q < QUERIES; q++) {
+            // 查询点可能落在网格外
+            double x = 119.9 + random.nextDouble() * 0.7;
+            double y = 29.9 + random.nextDouble() * 0.7;
+            double radius = q % 2 == 0 ? 5000 : Double.MAX_VALUE;
+            int limit = 1 + random.nextInt(30);
+
+            List<Map.Entry<Long, Double>> expected = bruteForce(entries, x, y, radius, limit);
+            List<Map.Entry<Long, Double>> actual = new ArrayList<>(grid.search(x, y, radius, limit).entrySet());
+            assertEquals(expected.size(), actual.size(), "查询" + q + "的结果数量");
+            for (int i = 0; i < expected.size(); i++) {
+                // 距离相同的店铺顺序可能不同，只比较距离
+                assertEquals(expected.get(i).getValue(), actual.get(i).getValue(), 1e-6, "查询" + q + "的第" + i + "个结果");
+                assertTrue(actual.get(i).getValue() <= radius);
+            }
+        }
+    }
+
+    @Test
+    void emptyGridReturnsNothing() {
+        ShopGeoIndex.Grid grid = new ShopGeoIndex.Grid(new ArrayList<>(), SystemConstants.SHOP_GEO_CELL);
+        assertTrue(grid.search(120, 30, Double.MAX_VALUE, 10).isEmpty());
+    }
+
+    private static List<Map.Entry<Long, Double>> bruteForce(List<Map.Entry<Long, ShopGeoIndex.Point>> entries,
+                                                            double x, double y, double radius, int limit) {
+        List<Map.Entry<Long, Double>> hits = new ArrayList<>();
+        for (Map.Entry<Long, ShopGeoIndex.Point> entry : entries) {
+            ShopGeoIndex.Point point = entry.getValue();
+            double distance = ShopGeoIndex.distance(x, y, point.x, point.y);
+            if (distance <= radius) {
+                hits.add(new AbstractMap.SimpleEntry<>(entry.getKey(), distance));
+            }
+        }
+        hits.sort(Comparator.comparingDouble(Map.Entry::getValue));
+        return hits.subList(0, Math.min(limit, hits.size()));
+    }
+}
@@ -0,0 +1,82 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeIDWorkerTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 1_000_000;
+
+    @Test
+    void concurrentIdsAreUnique() throws Exception {
+        SnowflakeIDWorker worker = new SnowflakeIDWorker(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                long[] ids = new long[IDS_PER_THREAD];
+                start.await();
+                for (int i = 0; i < IDS_PER_THREAD; i++) {
+                    ids[i] = worker.nextId(RedisConstants.ORDER);
+                }
+                return ids;
+            }));
+        }
+        start.countDown();
+        long[] all = new long[THREADS * IDS_PER_THREAD];
+        for (int t = 0; t < THREADS; t++) {
+            long[] ids = futures.get(t).get();
+            // 单个线程内id递增
+            for (int i = 1; i < ids.length; i++) {
+                assertTrue(ids[i] > ids[i - 1]);
+            }
+            System.arraycopy(ids, 0, all, t * IDS_PER_THREAD, IDS_PER_THREAD);
+        }
+        executor.shutdown();
+
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertNotEquals(all[i - 1], all[i], "重复id: " + all[i]);
+        }
+    }
+
+    @Test
+    void clockRollbackKeepsIdsIncreasing() {
+        SnowflakeIDWorker worker = new SnowflakeIDWorker(2);
+        long now = System.currentTimeMillis();
+        long before = worker.nextId(now);
+        // 时钟回拨1秒
+        long after = worker.nextId(now - 1000);
+        assertTrue(after > before);
+        // 时钟追上之后恢复使用真实时间
+        long recovered = worker.nextId(now + 1);
+        assertTrue(recovered > after);
+        assertEquals(0, recovered & 0xFFF);
+    }
+
+    @Test
+    void workerIdIsEncoded() {
+        long id = new SnowflakeIDWorker(SnowflakeIDWorker.MAX_WORKER_ID).nextId(RedisConstants.ORDER);
+        assertEquals(SnowflakeIDWorker.MAX_WORKER_ID, id >>> 12 & SnowflakeIDWorker.MAX_WORKER_ID);
+    }
+
+    @Test
+    void workerWithoutLeaseRejectsIds() {
+        // 没有租到workerId时不能生成id
+        assertThrows(IllegalStateException.class, () -> new SnowflakeIDWorker().nextId(RedisConstants.ORDER));
+    }
+}